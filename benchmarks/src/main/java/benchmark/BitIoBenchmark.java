@@ -0,0 +1,83 @@
+package benchmark;
+
+import io.InStream;
+import io.OutStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Bit-level writes and reads of {@link OutStream} and {@link InStream}, per
+ * code, with codes as wide as the Huffman coder writes them.
+ *
+ * @author Dev1Art
+ * @project HuffCompressor
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BitIoBenchmark {
+
+    // codes written or read per invocation
+    private static final int CODES = 1 << 20;
+
+    // width of every code, 0 for widths of 1 to 15 bits mixed
+    @Param({"3", "8", "13", "0"})
+    public int bits;
+
+    private int[] values;
+    private int[] widths;
+    private byte[] written;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        values = new int[CODES];
+        widths = new int[CODES];
+        for (int i = 0; i < CODES; i++) {
+            widths[i] = (bits > 0) ? bits : 1 + random.nextInt(15);
+            values[i] = random.nextInt(1 << widths[i]);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(CODES * 2);
+        OutStream binaryOut = new OutStream(bytes);
+        for (int i = 0; i < CODES; i++) binaryOut.writeBits(values[i], widths[i]);
+        binaryOut.flush();
+        written = bytes.toByteArray();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CODES)
+    public long writeBits() {
+        OutStream binaryOut = new OutStream(OutputStream.nullOutputStream());
+        for (int i = 0; i < CODES; i++) binaryOut.writeBits(values[i], widths[i]);
+        binaryOut.flush();
+        return binaryOut.position();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CODES)
+    public long readBits() {
+        InStream binaryIn = new InStream(new ByteArrayInputStream(written));
+        long sum = 0;
+        for (int i = 0; i < CODES; i++) sum += binaryIn.readBits(widths[i]);
+        return sum;
+    }
+}
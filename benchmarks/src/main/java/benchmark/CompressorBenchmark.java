@@ -0,0 +1,118 @@
+package benchmark;
+
+import core.CompressionOptions;
+import core.Compressor;
+import io.OutStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Whole archives through {@link Compressor}: a generated directory tree
+ * compressed to a file and extracted again. Files get sizes spread from a few
+ * bytes to twice the mean, in directories of a few dozen files each.
+ *
+ * @author Dev1Art
+ * @project HuffCompressor
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressorBenchmark {
+
+    // files in one directory of the tree
+    private static final int FILES_PER_DIR = 50;
+
+    @Param({Data.UNIFORM, Data.SKEWED, Data.TEXT, Data.RANDOM})
+    public String data;
+
+    @Param({"500"})
+    public int files;
+
+    @Param({"16384"})
+    public int meanFileSize;
+
+    // files up to this size are packed into solid blocks, 0 for none
+    @Param({"0"})
+    public long solidThreshold;
+
+    private Path work;
+    private File tree;
+    private File archive;
+    private File target;
+    private CompressionOptions options;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        work = Files.createTempDirectory("huff-bench");
+        tree = work.resolve("tree").toFile();
+        archive = work.resolve("tree.huff").toFile();
+        target = work.resolve("extracted").toFile();
+        options = new CompressionOptions().setSolidThreshold(solidThreshold);
+
+        Random random = new Random(42);
+        for (int i = 0; i < files; i++) {
+            Path dir = tree.toPath().resolve("d" + (i / FILES_PER_DIR));
+            Files.createDirectories(dir);
+            int size = 1 + random.nextInt(2 * meanFileSize);
+            Files.write(dir.resolve("f" + i + ".dat"), Data.generate(data, size, i));
+        }
+        compress();
+    }
+
+    @Benchmark
+    public long compress() {
+        OutStream binaryOut = new OutStream(archive);
+        Compressor.compress(tree, binaryOut, options);
+        binaryOut.close();
+        return archive.length();
+    }
+
+    @Setup(Level.Invocation)
+    public void clearTarget() {
+        delete(target.toPath());
+    }
+
+    @Benchmark
+    public File extract() {
+        Compressor.extract(archive, "**", target);
+        return target;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        delete(work);
+    }
+
+    private static void delete(Path root) {
+        if (!Files.exists(root)) return;
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
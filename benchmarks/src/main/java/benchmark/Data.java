@@ -0,0 +1,79 @@
+package benchmark;
+
+import java.util.Random;
+
+/**
+ * Generated inputs of the benchmarks, the same bytes for the same kind, size and seed.
+ *
+ * <ul>
+ *   <li>{@code uniform}: every byte value equally often, in a fixed pattern</li>
+ *   <li>{@code skewed}: a few byte values most of the time, geometrically fewer of the rest</li>
+ *   <li>{@code text}: words of English prose in lines, most common words most often</li>
+ *   <li>{@code random}: noise no coder can shrink</li>
+ * </ul>
+ *
+ * @author Dev1Art
+ * @project HuffCompressor
+ */
+public final class Data {
+
+    public static final String UNIFORM = "uniform";
+    public static final String SKEWED = "skewed";
+    public static final String TEXT = "text";
+    public static final String RANDOM = "random";
+
+    private static final String[] WORDS = {
+            "the", "of", "and", "to", "a", "in", "is", "it", "that", "was", "for", "on", "are", "with",
+            "as", "be", "at", "this", "have", "from", "or", "one", "had", "by", "word", "but", "not",
+            "what", "all", "were", "when", "we", "there", "can", "an", "your", "which", "their", "said",
+            "each", "she", "do", "how", "will", "other", "about", "out", "many", "then", "them", "these",
+            "some", "would", "make", "like", "into", "time", "has", "look", "more", "write", "number",
+            "compression", "archive", "directory", "Huffman", "table", "block", "stream", "entropy"
+    };
+
+    // can't be instancing
+    private Data() {}
+
+    public static byte[] generate(String kind, int size, long seed) {
+        Random random = new Random(seed);
+        byte[] data = new byte[size];
+        switch (kind) {
+            case UNIFORM:
+                for (int i = 0; i < size; i++) data[i] = (byte) (i * 167);
+                break;
+            case SKEWED:
+                for (int i = 0; i < size; i++) {
+                    // half of the bytes are 'a', a quarter 'b' and so on
+                    int symbol = Math.min(Long.numberOfTrailingZeros(random.nextLong()), 255);
+                    data[i] = (byte) ('a' + symbol);
+                }
+                break;
+            case TEXT:
+                text(data, random);
+                break;
+            case RANDOM:
+                random.nextBytes(data);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown kind of data: " + kind);
+        }
+        return data;
+    }
+
+    private static void text(byte[] data, Random random) {
+        int i = 0;
+        int line = 0;
+        while (i < data.length) {
+            // squaring a uniform index favours the words at the start of the list
+            double u = random.nextDouble();
+            String word = WORDS[(int) (u * u * WORDS.length)];
+            line += word.length() + 1;
+            String separator = (line > 72) ? ".\n" : " ";
+            if (line > 72) line = 0;
+            for (byte b : (word + separator).getBytes()) {
+                if (i == data.length) break;
+                data[i++] = b;
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package benchmark;
+
+import data.Constants;
+import huffman.Huffman;
+import huffman.Segment;
+import io.InStream;
+import io.OutStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Block coding of {@link Huffman} in memory, away from the file system.
+ *
+ * @author Dev1Art
+ * @project HuffCompressor
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HuffmanBenchmark {
+
+    @Param({Data.UNIFORM, Data.SKEWED, Data.TEXT, Data.RANDOM})
+    public String data;
+
+    @Param({"4194304"})
+    public int size;
+
+    @Param({"1"})
+    public int tables;
+
+    @Param({"0"})
+    public int lzWindow;
+
+    private byte[] input;
+    private byte[] compressed;
+
+    @Setup
+    public void setUp() {
+        input = Data.generate(data, size, 42);
+        compressed = write(Huffman.compressSegment(input, tables, lzWindow));
+    }
+
+    @Benchmark
+    public Segment compress() {
+        return Huffman.compressSegment(input, tables, lzWindow);
+    }
+
+    @Benchmark
+    public byte[] decompress() {
+        InStream binaryIn = new InStream(new ByteArrayInputStream(compressed));
+        return Huffman.decompress(binaryIn, Constants.FORMAT_VERSION, lzWindow > 0);
+    }
+
+    private static byte[] write(Segment segment) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutStream binaryOut = new OutStream(bytes);
+        Huffman.write(segment, binaryOut);
+        binaryOut.flush();
+        return bytes.toByteArray();
+    }
+}
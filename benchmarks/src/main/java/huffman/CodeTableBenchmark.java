@@ -0,0 +1,75 @@
+package huffman;
+
+import benchmark.Data;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building the code of a block: counting its bytes, the length-limited code
+ * lengths, the canonical codes and the decode table, and training several
+ * tables per block. In the {@code huffman} package to reach the package-private
+ * builders.
+ *
+ * @author Dev1Art
+ * @project HuffCompressor
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodeTableBenchmark {
+
+    // alphabet size of extended ASCII
+    private static final int R = 256;
+
+    // bytes of a block, as the compressor cuts files
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    @Param({Data.UNIFORM, Data.SKEWED, Data.TEXT, Data.RANDOM})
+    public String data;
+
+    private byte[] block;
+    private long[] freq;
+    private int[] lengths;
+
+    @Setup
+    public void setUp() {
+        block = Data.generate(data, BLOCK_SIZE, 42);
+        freq = count();
+        lengths = CodeLengths.limitedLengths(freq, CodeLengths.MAX_LENGTH);
+    }
+
+    @Benchmark
+    public long[] count() {
+        long[] freq = new long[R];
+        for (byte b : block) ++freq[b & 0xff];
+        return freq;
+    }
+
+    @Benchmark
+    public int[] codeLengths() {
+        return CodeLengths.limitedLengths(freq, CodeLengths.MAX_LENGTH);
+    }
+
+    @Benchmark
+    public DecodeTable decodeTable() {
+        return new DecodeTable(CodeLengths.canonicalCodes(lengths), lengths);
+    }
+
+    @Benchmark
+    public TableSet trainTables() {
+        return TableSet.train(block, R, TableSet.MAX_TABLES);
+    }
+}
@@ -0,0 +1,302 @@
+package cli;
+
+import data.Constants;
+import huffman.Dictionary;
+import java.awt.GraphicsEnvironment;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Command line entry point, for machines without a display. Runs any number
+ * of compress, decompress, update and train jobs, given as arguments or one
+ * per line of a job file, a few at a time, and prints a JSON summary of every
+ * job.
+ *
+ * <p>Exits with {@link #OK} if every job succeeded, {@link #FAILED} if any
+ * failed and {@link #USAGE} if the command line or job file is wrong. Without
+ * arguments on a machine with a display it starts the GUI instead.
+ *
+ * @author Dev1Art
+ * @project HuffCompressor
+ */
+public final class HuffCLI {
+
+    // exit codes
+    public static final int OK = 0;
+    public static final int FAILED = 1;
+    public static final int USAGE = 2;
+
+    private static final String HELP = String.join("\n",
+            "Usage: java -jar huffman-compressor.jar [options] <command> <in> <out> [<command> <in> <out> ...]",
+            "       java -jar huffman-compressor.jar [options] --jobs <file>",
+            "       java -jar huffman-compressor.jar --serve --help",
+            "",
+            "Commands:",
+            "  compress <src> <archive>     compress a file or directory; an existing directory as",
+            "                               <archive> gets " + Constants.ARCHIVE_NAME + " in it",
+            "  decompress <archive> <dir>   decompress into the directory; a directory as <archive>",
+            "                               means the " + Constants.ARCHIVE_NAME + " in it",
+            "  update <src> <archive>       bring the archive up to date with the source",
+            "  train <corpus> <dictionary>  train a code table for every file type under the corpus",
+            "                               directory and save them as a dictionary for --dictionary",
+            "",
+            "A '-' in place of <src> or <archive> of compress, or of <archive> or <dir> of decompress,",
+            "stands for stdin or stdout, coded in one pass in the stream format, e.g.",
+            "  pg_dump db | java -jar huffman-compressor.jar compress - - > db.hus",
+            "The JSON summary then goes to stderr, unless --summary is given.",
+            "",
+            "Options:",
+            "  --jobs <file>         read jobs from the file, one per line, '-' for stdin;",
+            "                        blank lines and lines starting with # are skipped",
+            "  --threads <n>         jobs run at once, default the number of processors",
+            "  --workers <n>         threads of every job, default processors / threads",
+            "  --dictionary <file>   code tables made by train, for compress and decompress",
+            "  --summary <file>      write the JSON summary there instead of stdout",
+            "  --help                show this help",
+            "",
+            "Exit codes: 0 all jobs succeeded, 1 some job failed, 2 wrong usage.");
+
+    // can't be instancing
+    private HuffCLI() {}
+
+    public static void main(String[] args) {
+        if (args.length == 0 && !GraphicsEnvironment.isHeadless()) {
+            gui.HuffGUI.main(args);
+            return;
+        }
+        System.exit(run(args));
+    }
+
+    /**
+     * Runs the jobs of the command line and returns the exit code, without
+     * exiting, so the CLI can also be driven from other code.
+     */
+    public static int run(String[] args) {
+        if (args.length > 0 && args[0].equals("--serve"))
+            return HuffDaemon.run(Arrays.copyOfRange(args, 1, args.length));
+
+        Settings settings;
+        List<Job> jobs;
+        try {
+            settings = Settings.parse(args);
+            if (settings.help) {
+                System.out.println(HELP);
+                return OK;
+            }
+            jobs = settings.jobs();
+            if (jobs.isEmpty()) throw new IllegalArgumentException("No jobs given");
+        }
+        catch (RuntimeException e) {
+            // a wrong option, job file or dictionary
+            System.err.println("huffman-compressor: " + e.getMessage());
+            System.err.println("Try --help for usage.");
+            return USAGE;
+        }
+
+        long start = System.nanoTime();
+        List<JobResult> results = runJobs(jobs, settings);
+        long elapsed = System.nanoTime() - start;
+
+        int failed = 0;
+        for (JobResult result : results) {
+            if (!result.ok()) {
+                failed++;
+                System.err.println("huffman-compressor: " + result.job() + ": " + result.error());
+            }
+        }
+        String summary = summary(results, failed, elapsed);
+        if (settings.summary == null) {
+            // stdout may be carrying the data of a job
+            boolean stdout = jobs.stream().anyMatch(Job::writesStdout);
+            (stdout ? System.err : System.out).println(summary);
+        } else {
+            try {
+                Files.writeString(settings.summary.toPath(), summary + "\n", StandardCharsets.UTF_8);
+            }
+            catch (IOException e) {
+                System.err.println("huffman-compressor: failed to write summary: " + e.getMessage());
+                return FAILED;
+            }
+        }
+        return (failed == 0) ? OK : FAILED;
+    }
+
+    // run the jobs on a pool of the given number of threads, results in the order of the jobs
+    private static List<JobResult> runJobs(List<Job> jobs, Settings settings) {
+        int threads = Math.min(settings.threads, jobs.size());
+        // processors are shared between the jobs running at once, unless told otherwise
+        int workers = (settings.workers > 0) ? settings.workers
+                : Math.max(1, Runtime.getRuntime().availableProcessors() / threads);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            // a job reading an archive waits for the earlier job writing it, a job writing it for every earlier job
+            // on it, readers too; earlier jobs start first so it never deadlocks
+            List<Future<JobResult>> futures = new ArrayList<>();
+            Map<File, Future<JobResult>> writers = new HashMap<>();
+            Map<File, List<Future<JobResult>>> readers = new HashMap<>();
+            for (Job job : jobs) {
+                File archive = job.archive().getAbsoluteFile();
+                List<Future<JobResult>> earlier = new ArrayList<>();
+                if (writers.containsKey(archive)) earlier.add(writers.get(archive));
+                if (job.writesArchive()) earlier.addAll(readers.getOrDefault(archive, List.of()));
+
+                Future<JobResult> future = executor.submit(() -> {
+                    for (Future<JobResult> before : earlier) before.get();
+                    return job.run(workers, settings.dictionary);
+                });
+                futures.add(future);
+                if (job.writesArchive()) {
+                    writers.put(archive, future);
+                    readers.remove(archive);
+                } else {
+                    readers.computeIfAbsent(archive, a -> new ArrayList<>()).add(future);
+                }
+            }
+            List<JobResult> results = new ArrayList<>();
+            for (Future<JobResult> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while running jobs", e);
+        }
+        catch (ExecutionException e) {
+            // every job catches its own failures
+            throw new IllegalStateException(e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static String summary(List<JobResult> results, int failed, long elapsedNanos) {
+        StringBuilder json = new StringBuilder("{\"jobs\":[");
+        for (int i = 0; i < results.size(); i++) {
+            json.append((i == 0) ? "\n  " : ",\n  ");
+            results.get(i).appendTo(json);
+        }
+        json.append("\n],\"succeeded\":").append(results.size() - failed)
+                .append(",\"failed\":").append(failed)
+                .append(",\"elapsedMs\":").append(elapsedNanos / 1_000_000)
+                .append('}');
+        return json.toString();
+    }
+
+    /**
+     * The options and jobs of a command line.
+     */
+    private static final class Settings {
+        private final List<String> jobArgs = new ArrayList<>();
+        private String jobFile;
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private int workers;
+        private Dictionary dictionary;
+        private File summary;
+        private boolean help;
+
+        static Settings parse(String[] args) {
+            Settings settings = new Settings();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (!arg.startsWith("--")) {
+                    settings.jobArgs.add(arg);
+                    continue;
+                }
+                switch (arg) {
+                    case "--help":
+                        settings.help = true;
+                        break;
+                    case "--jobs":
+                        settings.jobFile = value(args, ++i, arg);
+                        break;
+                    case "--threads":
+                        settings.threads = positive(value(args, ++i, arg), arg);
+                        break;
+                    case "--workers":
+                        settings.workers = positive(value(args, ++i, arg), arg);
+                        break;
+                    case "--dictionary":
+                        settings.dictionary = dictionary(value(args, ++i, arg));
+                        break;
+                    case "--summary":
+                        settings.summary = new File(value(args, ++i, arg));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+            return settings;
+        }
+
+        // jobs of the arguments, then of the job file
+        List<Job> jobs() {
+            List<Job> jobs = Job.parse(jobArgs, "arguments");
+            if (jobFile != null) {
+                List<String> lines = readLines(jobFile);
+                for (int i = 0; i < lines.size(); i++) {
+                    String line = lines.get(i).trim();
+                    if (line.isEmpty() || line.startsWith("#")) continue;
+                    jobs.addAll(Job.parse(Job.split(line), jobFile + ":" + (i + 1)));
+                }
+            }
+            // stdin and stdout carry the data of one job at most
+            long stdin = jobs.stream().filter(Job::readsStdin).count() + ("-".equals(jobFile) ? 1 : 0);
+            if (stdin > 1) throw new IllegalArgumentException("Only one job or the job file can read stdin");
+            if (jobs.stream().filter(Job::writesStdout).count() > 1)
+                throw new IllegalArgumentException("Only one job can write stdout");
+            return jobs;
+        }
+
+        private static List<String> readLines(String jobFile) {
+            try {
+                if (jobFile.equals("-")) {
+                    BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+                    return reader.lines().toList();
+                }
+                return Files.readAllLines(new File(jobFile).toPath(), StandardCharsets.UTF_8);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("Failed to read job file: " + jobFile, e);
+            }
+        }
+    }
+
+    static String value(String[] args, int i, String option) {
+        if (i >= args.length) throw new IllegalArgumentException("Missing value of " + option);
+        return args[i];
+    }
+
+    static int positive(String value, String option) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n > 0) return n;
+        }
+        catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Illegal value of " + option + ": " + value);
+    }
+
+    static Dictionary dictionary(String path) {
+        File file = new File(path);
+        if (!file.isFile()) throw new IllegalArgumentException("No dictionary file: " + file);
+        return Dictionary.load(file);
+    }
+}
@@ -0,0 +1,586 @@
+package cli;
+
+import core.CompressionOptions;
+import core.Compressor;
+import data.Constants;
+import huffman.Dictionary;
+import io.OutStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * A long running compressor serving jobs over a Unix domain socket or a
+ * loopback port, so jobs don't pay for starting a JVM and warming up its JIT
+ * every time.
+ *
+ * <p>Clients send one job per line, {@code compress <src> <archive>},
+ * {@code decompress <archive> <dir>} or {@code update <src> <archive>}, with
+ * absolute paths, and get one line of JSON back per job, as in the summary of
+ * {@link HuffCLI}. {@code ping} and {@code stats} report on the daemon.
+ *
+ * <p>Only the owner of the daemon may use it: the socket file is readable and
+ * writable by the owner alone, and a client of the loopback port, which any
+ * local user can reach, first sends {@code auth <token>} with the token the
+ * daemon wrote to an owner-only file.
+ *
+ * <p>Every connection gets a virtual thread where the JVM has them, a pooled
+ * thread otherwise. Only so many jobs code at once, the rest wait for their
+ * turn, and jobs beyond the queue are rejected right away instead of piling
+ * up. The trained tables of the dictionary and the JIT compiled coder stay
+ * warm across jobs; the coder is warmed up before the first job is taken.
+ *
+ * @author Dev1Art
+ * @project HuffCompressor
+ */
+public final class HuffDaemon implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(HuffDaemon.class.getName());
+
+    private static final String HELP = String.join("\n",
+            "Usage: java -jar huffman-compressor.jar --serve (--socket <path> | --port <n>) [options]",
+            "",
+            "Options:",
+            "  --socket <path>       listen on a Unix domain socket at the path",
+            "  --port <n>            listen on the loopback port, 0 for any free port",
+            "  --token-file <path>   with --port, write a fresh token there, clients first send 'auth <token>'",
+            "  --threads <n>         jobs coding at once, default the number of processors",
+            "  --queue <n>           jobs waiting for their turn before new ones are rejected, default 64",
+            "  --workers <n>         threads of every job, default processors / threads",
+            "  --dictionary <file>   code tables trained per file type, loaded once",
+            "",
+            "Send one job per line, with absolute paths:",
+            "  compress <src> <archive> | decompress <archive> <dir> | update <src> <archive> | ping | stats",
+            "on a port, after a first line 'auth <token>' with the token of the token file.");
+
+    private static final String BUSY = "{\"status\":\"rejected\",\"error\":\"Busy, try again later\"}";
+    private static final String UNAUTHORIZED = "{\"status\":\"rejected\",\"error\":\"Not authorized\"}";
+
+    private static final int TOKEN_BYTES = 32;
+
+    // files compressed and extracted to warm up the coder
+    private static final int WARM_UP_BYTES = 1 << 20;
+    private static final int WARM_UP_FILES = 16;
+    private static final int WARM_UP_ROUNDS = 10;
+
+    private final ServerSocketChannel server;
+    private final Path socketFile;              // removed on close, null for a port
+    private final byte[] token;                 // the first line of a connection must be "auth <token>", null for a socket
+    private final ExecutorService connections;
+    private final Semaphore coding;             // permits of jobs coding at once
+    private final int maxCoding;
+    private final int maxWaiting;
+    private final int workers;
+    private final Dictionary dictionary;
+    // jobs on one archive never run at once, locks are held by the jobs on the archive and dropped after them
+    private final Map<File, ArchiveLock> archiveLocks = new ConcurrentHashMap<>();
+
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong served = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private HuffDaemon(ServerSocketChannel server, Path socketFile, String token, int maxCoding, int maxWaiting,
+                       int workers, Dictionary dictionary) {
+        this.server     = server;
+        this.socketFile = socketFile;
+        this.token      = (token == null) ? null : ("auth " + token).getBytes(StandardCharsets.UTF_8);
+        this.coding     = new Semaphore(maxCoding, true);
+        this.maxCoding  = maxCoding;
+        this.maxWaiting = maxWaiting;
+        this.workers    = workers;
+        this.dictionary = dictionary;
+        this.connections = connectionExecutor(maxCoding + maxWaiting);
+    }
+
+    /**
+     * Listens on a Unix domain socket at the path. A socket file left by a
+     * daemon that is gone is replaced, one still answering is an error. The
+     * socket file is made the owner's alone, as anyone who may write to it may
+     * run jobs with the rights of the daemon.
+     */
+    public static HuffDaemon unixSocket(Path path, int maxCoding, int maxWaiting, int workers, Dictionary dictionary) {
+        UnixDomainSocketAddress address = UnixDomainSocketAddress.of(path);
+        try {
+            if (Files.exists(path)) {
+                if (isListening(address)) throw new IllegalStateException("A daemon already listens on " + path);
+                Files.delete(path);
+            }
+            ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            server.bind(address);
+            try {
+                Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rw-------"));
+            }
+            catch (UnsupportedOperationException e) {
+                // no POSIX permissions on Windows, the socket file keeps the access list of its directory
+            }
+            catch (IOException e) {
+                server.close();
+                throw e;
+            }
+            return new HuffDaemon(server, path, null, maxCoding, maxWaiting, workers, dictionary);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Failed to listen on " + path, e);
+        }
+    }
+
+    /**
+     * Listens on the port of the loopback address, 0 for any free port. Any
+     * local user can connect, so clients must first send {@code auth} with the
+     * token, as made by {@link #newToken()}.
+     */
+    public static HuffDaemon loopback(int port, String token, int maxCoding, int maxWaiting, int workers,
+                                      Dictionary dictionary) {
+        if (null == token || token.isEmpty())
+            throw new IllegalArgumentException("A token is required on a loopback port");
+
+        try {
+            ServerSocketChannel server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            return new HuffDaemon(server, null, token, maxCoding, maxWaiting, workers, dictionary);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Failed to listen on port " + port, e);
+        }
+    }
+
+    // a random token hard to guess, for loopback
+    public static String newToken() {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(bytes);
+        return HexFormat.of().formatHex(bytes);
+    }
+
+    public SocketAddress getAddress() {
+        try {
+            return server.getLocalAddress();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Takes connections until the daemon is closed, each served on a thread
+     * of its own.
+     */
+    public void serve() {
+        while (server.isOpen()) {
+            SocketChannel channel;
+            try {
+                channel = server.accept();
+            }
+            catch (AsynchronousCloseException e) {
+                break;
+            }
+            catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to accept a connection", e);
+                continue;
+            }
+            try {
+                connections.execute(() -> serve(channel));
+            }
+            catch (RejectedExecutionException e) {
+                busy(channel);
+            }
+        }
+    }
+
+    // tell a connection there's no thread for it and close it
+    private void busy(SocketChannel channel) {
+        rejected.incrementAndGet();
+        try (channel) {
+            channel.write(ByteBuffer.wrap(BUSY.concat("\n").getBytes(StandardCharsets.UTF_8)));
+        }
+        catch (IOException e) {
+            LOGGER.log(Level.FINE, "Connection closed", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            server.close();
+            if (socketFile != null) Files.deleteIfExists(socketFile);
+        }
+        catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to close the daemon socket", e);
+        }
+        connections.shutdownNow();
+    }
+
+    // answer every line of the connection until the client closes it
+    private void serve(SocketChannel channel) {
+        try (channel;
+             BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8))) {
+            if (token != null && !authorized(in.readLine())) {
+                rejected.incrementAndGet();
+                out.write(UNAUTHORIZED);
+                out.write('\n');
+                out.flush();
+                return;
+            }
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) continue;
+                out.write(answer(line));
+                out.write('\n');
+                out.flush();
+            }
+        }
+        catch (IOException e) {
+            // the client went away, its jobs are done or never started
+            LOGGER.log(Level.FINE, "Connection closed", e);
+        }
+    }
+
+    // compared in constant time, so the token can't be guessed byte by byte
+    private boolean authorized(String line) {
+        return line != null && MessageDigest.isEqual(token, line.trim().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String answer(String line) {
+        if (line.equals("ping")) return "{\"status\":\"ok\"}";
+        if (line.equals("stats")) return stats();
+
+        Job job;
+        try {
+            List<Job> jobs = Job.parse(Job.split(line), "request");
+            if (jobs.size() != 1) throw new IllegalArgumentException("One job per line");
+            job = jobs.get(0);
+            if (!job.in.isAbsolute() || !job.out.isAbsolute())
+                throw new IllegalArgumentException("Paths must be absolute");
+        }
+        catch (IllegalArgumentException e) {
+            failed.incrementAndGet();
+            return "{\"status\":\"failed\",\"error\":" + JobResult.quote(e.getMessage()) + "}";
+        }
+
+        // admission: a bounded number of jobs code, a bounded number wait, the rest are turned away
+        if (waiting.incrementAndGet() > maxWaiting) {
+            waiting.decrementAndGet();
+            rejected.incrementAndGet();
+            return BUSY;
+        }
+        // the archive first, so a job waiting on another job's archive never holds a permit others could code with
+        File archive = actualFile(job.archive());
+        ArchiveLock archiveLock;
+        try {
+            archiveLock = lockArchive(archive);
+            try {
+                coding.acquire();
+            }
+            catch (InterruptedException e) {
+                unlockArchive(archive, archiveLock);
+                throw e;
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "{\"command\":" + JobResult.quote(job.command) + ",\"status\":\"failed\",\"error\":\"Daemon shutting down\"}";
+        }
+        finally {
+            waiting.decrementAndGet();
+        }
+
+        try {
+            JobResult result = job.run(workers, dictionary);
+            (result.ok() ? served : failed).incrementAndGet();
+            StringBuilder json = new StringBuilder();
+            result.appendTo(json);
+            return json.toString();
+        }
+        finally {
+            coding.release();
+            unlockArchive(archive, archiveLock);
+        }
+    }
+
+    // the lock of the archive, made for the first job on it and shared by the jobs after it
+    private ArchiveLock lockArchive(File archive) throws InterruptedException {
+        ArchiveLock lock = archiveLocks.compute(archive, (file, held) -> {
+            if (held == null) held = new ArchiveLock();
+            held.jobs++;
+            return held;
+        });
+        try {
+            lock.lock.lockInterruptibly();
+            return lock;
+        }
+        catch (InterruptedException e) {
+            release(archive);
+            throw e;
+        }
+    }
+
+    private void unlockArchive(File archive, ArchiveLock lock) {
+        lock.lock.unlock();
+        release(archive);
+    }
+
+    // drop the lock of the archive once no job holds or waits for it
+    private void release(File archive) {
+        archiveLocks.computeIfPresent(archive, (file, held) -> (--held.jobs == 0) ? null : held);
+    }
+
+    // one archive by two paths, through links or '..', is still one archive
+    private static File actualFile(File file) {
+        try {
+            return file.getCanonicalFile();
+        }
+        catch (IOException e) {
+            return file.toPath().toAbsolutePath().normalize().toFile();
+        }
+    }
+
+    private String stats() {
+        return "{\"status\":\"ok\",\"coding\":" + (maxCoding - coding.availablePermits())
+                + ",\"waiting\":" + waiting.get()
+                + ",\"served\":" + served.get()
+                + ",\"failed\":" + failed.get()
+                + ",\"rejected\":" + rejected.get()
+                + ",\"virtualThreads\":" + !(connections instanceof ThreadPoolExecutor) + "}";
+    }
+
+    /**
+     * Compresses and extracts a few files of generated text in a temporary
+     * directory, so the JIT compiles the coder and the tables of the
+     * dictionary are built before the first job.
+     */
+    public void warmUp() {
+        Path dir = null;
+        try {
+            dir = Files.createTempDirectory("huff-warm-up");
+            Path src = Files.createDirectory(dir.resolve("src"));
+            Random random = new Random(0);
+            Files.write(src.resolve("large.txt"), text(random, WARM_UP_BYTES));
+            for (int i = 0; i < WARM_UP_FILES; i++) {
+                Files.write(src.resolve("small" + i + ".txt"), text(random, WARM_UP_BYTES >> 8));
+            }
+            if (dictionary != null) {
+                for (String type : dictionary.types()) {
+                    Files.write(src.resolve("small." + type), text(random, WARM_UP_BYTES >> 8));
+                }
+            }
+
+            File archive = dir.resolve("warm-up" + Constants.HUFF_SUFFIX).toFile();
+            CompressionOptions options = new CompressionOptions().setWorkers(workers).setDictionary(dictionary);
+            for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+                OutStream binaryOut = new OutStream(archive);
+                Compressor.compress(src.toFile(), binaryOut, options);
+                binaryOut.close();
+                Compressor.extract(archive, "**", dir.resolve("out" + round).toFile(), workers, dictionary);
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Failed to warm up", e);
+        }
+        finally {
+            if (dir != null) delete(dir);
+        }
+    }
+
+    // bytes skewed like text, so codes of many lengths get used
+    private static byte[] text(Random random, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) ('a' + Math.min((int) Math.abs(random.nextGaussian() * 6), 25));
+        }
+        return bytes;
+    }
+
+    private static void delete(Path dir) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+        catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to remove warm-up files in " + dir, e);
+        }
+    }
+
+    /**
+     * A virtual thread per connection on a JVM that has them, looked up at run
+     * time as the code is built for an older release; a bounded pool of
+     * platform threads otherwise.
+     */
+    private static ExecutorService connectionExecutor(int threads) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        }
+        catch (ReflectiveOperationException e) {
+            // connections beyond the pool are turned away, not queued behind idle ones
+            return new ThreadPoolExecutor(0, threads, 60, TimeUnit.SECONDS, new SynchronousQueue<>());
+        }
+    }
+
+    // writes the token to a new file only the owner can read
+    private static void writeToken(Path file, String token) {
+        try {
+            Files.deleteIfExists(file);
+            try {
+                Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+            }
+            catch (UnsupportedOperationException e) {
+                // no POSIX permissions on Windows, the file keeps the access list of its directory
+                Files.createFile(file);
+            }
+            Files.writeString(file, token + "\n", StandardCharsets.UTF_8);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Failed to write token file " + file, e);
+        }
+    }
+
+    private static boolean isListening(UnixDomainSocketAddress address) {
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            return channel.isConnected();
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Runs the daemon of the command line until the JVM is stopped and
+     * returns the exit code, as {@link HuffCLI#run(String[])} does.
+     */
+    static int run(String[] args) {
+        String socket = null;
+        int port = -1;
+        Path tokenFile = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int queue = 64;
+        int workers = 0;
+        Dictionary dictionary = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--help":
+                        System.out.println(HELP);
+                        return HuffCLI.OK;
+                    case "--socket":
+                        socket = HuffCLI.value(args, ++i, arg);
+                        break;
+                    case "--port":
+                        port = port(HuffCLI.value(args, ++i, arg), arg);
+                        break;
+                    case "--token-file":
+                        tokenFile = new File(HuffCLI.value(args, ++i, arg)).toPath();
+                        break;
+                    case "--threads":
+                        threads = HuffCLI.positive(HuffCLI.value(args, ++i, arg), arg);
+                        break;
+                    case "--queue":
+                        queue = HuffCLI.positive(HuffCLI.value(args, ++i, arg), arg);
+                        break;
+                    case "--workers":
+                        workers = HuffCLI.positive(HuffCLI.value(args, ++i, arg), arg);
+                        break;
+                    case "--dictionary":
+                        dictionary = HuffCLI.dictionary(HuffCLI.value(args, ++i, arg));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+            if ((socket == null) == (port < 0)) throw new IllegalArgumentException("Give either --socket or --port");
+            if ((port >= 0) != (tokenFile != null))
+                throw new IllegalArgumentException("--token-file goes with --port, and only with it");
+        }
+        catch (RuntimeException e) {
+            System.err.println("huffman-compressor: " + e.getMessage());
+            System.err.println("Try --serve --help for usage.");
+            return HuffCLI.USAGE;
+        }
+
+        if (workers == 0) workers = Math.max(1, Runtime.getRuntime().availableProcessors() / threads);
+        HuffDaemon daemon;
+        try {
+            if (socket != null) {
+                daemon = unixSocket(new File(socket).toPath(), threads, queue, workers, dictionary);
+            } else {
+                String token = newToken();
+                writeToken(tokenFile, token);
+                daemon = loopback(port, token, threads, queue, workers, dictionary);
+            }
+        }
+        catch (UncheckedIOException | IllegalStateException e) {
+            // a socket in use, a port taken or a path that can't be written
+            System.err.println("huffman-compressor: " + e.getMessage()
+                    + ((e.getCause() != null) ? ": " + e.getCause().getMessage() : ""));
+            return HuffCLI.USAGE;
+        }
+        Path token = tokenFile;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            daemon.close();
+            if (token != null) token.toFile().delete();
+        }));
+        daemon.warmUp();
+        System.err.println("huffman-compressor: listening on " + daemon.getAddress());
+        daemon.serve();
+        return HuffCLI.OK;
+    }
+
+    private static int port(String value, String option) {
+        try {
+            int port = Integer.parseInt(value);
+            if (port >= 0 && port <= 0xffff) return port;
+        }
+        catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Illegal value of " + option + ": " + value);
+    }
+
+    // a lock of an archive and the number of jobs holding or waiting for it, counted under the map's lock
+    private static final class ArchiveLock {
+        private final ReentrantLock lock = new ReentrantLock(true);
+        private int jobs;
+    }
+}
@@ -0,0 +1,274 @@
+package cli;
+
+import core.CompressionOptions;
+import core.Compressor;
+import core.Progress;
+import data.Constants;
+import huffman.Dictionary;
+import io.OutStream;
+import java.io.FileDescriptor;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A single compress, decompress or update of one input into one output, as
+ * given on the command line, in a job file or to the daemon.
+ *
+ * @author Dev1Art
+ * @project HuffCompressor
+ */
+final class Job {
+    // a path standing for stdin or stdout, coded in the one-pass stream format
+    static final String STANDARD_STREAM = "-";
+
+    final String command;
+    final File in;
+    final File out;
+
+    private Job(String command, File in, File out) {
+        this.command = command;
+        this.in = in;
+        this.out = out;
+    }
+
+    // jobs of a run of command, input, output triples
+    static List<Job> parse(List<String> words, String source) {
+        List<Job> jobs = new ArrayList<>();
+        for (int i = 0; i < words.size(); i += 3) {
+            String command = words.get(i);
+            if (!command.equals("compress") && !command.equals("decompress") && !command.equals("update")
+                    && !command.equals("train"))
+                throw new IllegalArgumentException("Unknown command in " + source + ": " + command);
+            if (i + 2 >= words.size())
+                throw new IllegalArgumentException("Missing paths of " + command + " in " + source);
+            Job job = new Job(command, new File(words.get(i + 1)), new File(words.get(i + 2)));
+            if ((command.equals("update") || command.equals("train")) && job.isStream())
+                throw new IllegalArgumentException(command + " takes no '" + STANDARD_STREAM + "' in " + source);
+            jobs.add(job);
+        }
+        return jobs;
+    }
+
+    // words of a job line, a path with spaces may be put in double quotes
+    static List<String> split(String line) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = null;
+        boolean quoted = false;
+        for (char c : line.toCharArray()) {
+            if (c == '"') {
+                quoted = !quoted;
+                if (word == null) word = new StringBuilder();
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (word != null) words.add(word.toString());
+                word = null;
+            } else {
+                if (word == null) word = new StringBuilder();
+                word.append(c);
+            }
+        }
+        if (quoted) throw new IllegalArgumentException("Unclosed quote in job: " + line);
+        if (word != null) words.add(word.toString());
+        return words;
+    }
+
+    // the archive the job reads or writes, the dictionary file for train
+    File archive() {
+        if (command.equals("train")) return out;
+        File archive = command.equals("decompress") ? in : out;
+        return archive.isDirectory() ? new File(archive, Constants.ARCHIVE_NAME) : archive;
+    }
+
+    // stdin or stdout in place of a file, coded in the stream format instead of as an archive
+    boolean isStream() {
+        return readsStdin() || writesStdout();
+    }
+
+    boolean readsStdin() {
+        return in.getPath().equals(STANDARD_STREAM);
+    }
+
+    boolean writesStdout() {
+        return out.getPath().equals(STANDARD_STREAM);
+    }
+
+    boolean writesArchive() {
+        return !command.equals("decompress");
+    }
+
+    // runs the job, any failure ends up in the result
+    JobResult run(int workers, Dictionary dictionary) {
+        Progress progress = new Progress();
+        long start = System.nanoTime();
+        try {
+            if (isStream()) return stream(start);
+            switch (command) {
+                case "compress":
+                    return compress(workers, dictionary, progress, start);
+                case "update":
+                    return update(workers, dictionary, progress, start);
+                case "train":
+                    return train(start);
+                default:
+                    return decompress(workers, dictionary, progress, start);
+            }
+        }
+        catch (Exception e) {
+            String message = (e.getMessage() != null) ? e.getMessage() : e.getClass().getSimpleName();
+            return JobResult.failure(this, message, System.nanoTime() - start);
+        }
+    }
+
+    private JobResult compress(int workers, Dictionary dictionary, Progress progress, long start) {
+        if (!in.exists()) throw new IllegalArgumentException("No such file or directory: " + in);
+        File archive = archive();
+
+        OutStream binaryOut = new OutStream(archive);
+        try {
+            Compressor.compress(in, binaryOut, options(workers, dictionary, progress));
+            binaryOut.close();
+        }
+        catch (RuntimeException e) {
+            try {
+                binaryOut.close();
+            }
+            catch (RuntimeException closeFailure) {
+                e.addSuppressed(closeFailure);
+            }
+            // no half written archive is left behind
+            archive.delete();
+            throw e;
+        }
+        return JobResult.success(this, archive, progress.getTotal(), archive.length(), System.nanoTime() - start);
+    }
+
+    private JobResult update(int workers, Dictionary dictionary, Progress progress, long start) {
+        if (!in.exists()) throw new IllegalArgumentException("No such file or directory: " + in);
+        File archive = archive();
+
+        Compressor.update(archive, in, options(workers, dictionary, progress));
+        return JobResult.success(this, archive, progress.getTotal(), archive.length(), System.nanoTime() - start);
+    }
+
+    // a table for every type of file in the corpus, saved as a dictionary for --dictionary
+    private JobResult train(long start) {
+        if (!in.isDirectory()) throw new IllegalArgumentException("No such corpus directory: " + in);
+
+        Dictionary trained = Dictionary.train(in);
+        if (!trained.types().iterator().hasNext())
+            throw new IllegalArgumentException("No files with an extension in corpus: " + in);
+        trained.save(out);
+        return JobResult.success(this, out, -1, out.length(), System.nanoTime() - start);
+    }
+
+    private JobResult decompress(int workers, Dictionary dictionary, Progress progress, long start) {
+        File archive = archive();
+        if (!archive.isFile()) throw new IllegalArgumentException("No such archive: " + archive);
+        if (!out.isDirectory() && !out.mkdirs()) throw new IllegalArgumentException("Failed to make dir: " + out);
+
+        Compressor.decompress(archive, out, workers, dictionary, progress);
+        // archives of old formats don't tell their size before they are read
+        long original = (progress.getTotal() >= 0) ? progress.getBytes() : -1;
+        return JobResult.success(this, out, original, archive.length(), System.nanoTime() - start);
+    }
+
+    // compress or decompress in one pass through the stream path, sizes counted on the way;
+    // stdin and stdout are left open for whatever comes after
+    private JobResult stream(long start) throws IOException {
+        boolean compress = command.equals("compress");
+        CountedInput input = new CountedInput(readsStdin() ? System.in : new FileInputStream(in));
+        CountedOutput output = null;
+        try {
+            output = new CountedOutput(writesStdout() ? new FileOutputStream(FileDescriptor.out) : new FileOutputStream(out));
+            if (compress)
+                Compressor.compress(input, output);
+            else
+                Compressor.decompress(input, output);
+            output.flush();
+        }
+        catch (RuntimeException | IOException e) {
+            // no half written file is left behind
+            if (output != null && !writesStdout()) {
+                try {
+                    output.close();
+                }
+                catch (IOException closeFailure) {
+                    e.addSuppressed(closeFailure);
+                }
+                out.delete();
+            }
+            throw e;
+        }
+        finally {
+            if (!readsStdin()) input.close();
+        }
+        if (!writesStdout()) output.close();
+
+        long original = compress ? input.count : output.count;
+        long archive = compress ? output.count : input.count;
+        return JobResult.success(this, out, original, archive, System.nanoTime() - start);
+    }
+
+    private static CompressionOptions options(int workers, Dictionary dictionary, Progress progress) {
+        return new CompressionOptions()
+                .setWorkers(workers)
+                .setDictionary(dictionary)
+                .setProgress(progress);
+    }
+
+    @Override
+    public String toString() {
+        return command + " " + in + " " + out;
+    }
+
+    // an input counting the bytes read through it
+    private static final class CountedInput extends FilterInputStream {
+        private long count;
+
+        CountedInput(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+
+    // an output counting the bytes written through it
+    private static final class CountedOutput extends FilterOutputStream {
+        private long count;
+
+        CountedOutput(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package cli;
+
+import java.io.File;
+import java.util.Locale;
+
+/**
+ * What a job did, or why it failed, written as a JSON object.
+ *
+ * @author Dev1Art
+ * @project HuffCompressor
+ */
+final class JobResult {
+    private final Job job;
+    private final File output;          // file or directory written, null if failed
+    private final long originalBytes;   // uncompressed size, -1 if unknown
+    private final long archiveBytes;
+    private final long elapsedNanos;
+    private final String error;         // null if succeeded
+
+    private JobResult(Job job, File output, long originalBytes, long archiveBytes, long elapsedNanos, String error) {
+        this.job           = job;
+        this.output        = output;
+        this.originalBytes = originalBytes;
+        this.archiveBytes  = archiveBytes;
+        this.elapsedNanos  = elapsedNanos;
+        this.error         = error;
+    }
+
+    static JobResult success(Job job, File output, long originalBytes, long archiveBytes, long elapsedNanos) {
+        return new JobResult(job, output, originalBytes, archiveBytes, elapsedNanos, null);
+    }
+
+    static JobResult failure(Job job, String error, long elapsedNanos) {
+        return new JobResult(job, null, -1, -1, elapsedNanos, error);
+    }
+
+    Job job() {
+        return job;
+    }
+
+    String error() {
+        return error;
+    }
+
+    boolean ok() {
+        return error == null;
+    }
+
+    void appendTo(StringBuilder json) {
+        json.append("{\"command\":").append(quote(job.command))
+                .append(",\"input\":").append(quote(job.in.getPath()))
+                .append(",\"output\":").append(quote((output != null) ? output.getPath() : job.out.getPath()))
+                .append(",\"status\":").append(quote(ok() ? "ok" : "failed"));
+        if (!ok()) json.append(",\"error\":").append(quote(error));
+        json.append(",\"elapsedMs\":").append(format(elapsedNanos / 1e6));
+        if (!ok()) {
+            json.append('}');
+            return;
+        }
+        if (originalBytes >= 0) json.append(",\"originalBytes\":").append(originalBytes);
+        json.append(",\"archiveBytes\":").append(archiveBytes);
+        if (originalBytes > 0) {
+            // archive size over original size, below 1 when it shrank
+            json.append(",\"ratio\":").append(format((double) archiveBytes / originalBytes))
+                    .append(",\"mbPerSecond\":").append(format(originalBytes / 1e6 / Math.max(elapsedNanos / 1e9, 1e-9)));
+        }
+        json.append('}');
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    static String quote(String s) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            switch (c) {
+                case '"':  quoted.append("\\\""); break;
+                case '\\': quoted.append("\\\\"); break;
+                case '\n': quoted.append("\\n"); break;
+                case '\r': quoted.append("\\r"); break;
+                case '\t': quoted.append("\\t"); break;
+                default:
+                    if (c < 0x20) quoted.append(String.format("\\u%04x", (int) c));
+                    else quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
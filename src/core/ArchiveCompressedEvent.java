@@ -0,0 +1,55 @@
+package core;
+
+import huffman.CodingStats.Phase;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event of a whole archive, lasting for the whole run.
+ *
+ * @author Dev1Art
+ * @project HuffCompressor
+ */
+@Name("huffcompressor.ArchiveCompressed")
+@Label("Archive Compressed")
+@Category("HuffCompressor")
+@Description("A file or directory compressed into an archive")
+final class ArchiveCompressedEvent extends jdk.jfr.Event {
+
+    @Label("Entries")
+    int entries;
+
+    @Label("Bytes In")
+    @DataAmount
+    long bytesIn;
+
+    @Label("Bytes Out")
+    @DataAmount
+    long bytesOut;
+
+    @Label("Coding Time")
+    @Description("Time of all coding phases, summed over the threads coding blocks")
+    @Timespan
+    long codingTime;
+
+    @Label("I/O Time")
+    @Timespan
+    long ioTime;
+
+    @Label("Code Tables")
+    @DataAmount
+    long tableBytes;
+
+    void set(ArchiveMetrics metrics) {
+        entries = metrics.getEntries();
+        bytesIn = metrics.getBytesIn();
+        bytesOut = metrics.getBytesOut();
+        codingTime = metrics.getCoding().nanos();
+        ioTime = metrics.getCoding().nanos(Phase.IO);
+        tableBytes = metrics.getCoding().tableBytes();
+    }
+}
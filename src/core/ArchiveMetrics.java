@@ -0,0 +1,54 @@
+package core;
+
+import huffman.CodingStats;
+
+/**
+ * Totals of a {@link Compressor} run, over all its entries.
+ *
+ * @author Dev1Art
+ * @project HuffCompressor
+ */
+public final class ArchiveMetrics {
+
+    private final int entries;
+    private final long bytesIn;
+    private final long bytesOut;
+    private final long nanos;
+    private final CodingStats coding;
+
+    ArchiveMetrics(int entries, long bytesIn, long bytesOut, long nanos, CodingStats coding) {
+        this.entries  = entries;
+        this.bytesIn  = bytesIn;
+        this.bytesOut = bytesOut;
+        this.nanos    = nanos;
+        this.coding   = coding;
+    }
+
+    // files and directories in the archive
+    public int getEntries() {
+        return entries;
+    }
+
+    // bytes of all files
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    // bytes of the whole archive, header and central directory included
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    public double getRatio() {
+        return (bytesIn == 0) ? 1 : (double) bytesOut / bytesIn;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    // coding phases and code tables of all entries and solid blocks together
+    public CodingStats getCoding() {
+        return coding;
+    }
+}
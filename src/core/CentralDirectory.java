@@ -0,0 +1,108 @@
+package core;
+
+import data.Constants;
+import io.InStream;
+import io.OutStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Index of the entries of an archive, written after the last entry.
+ *
+ * <p>The archive ends with a fixed-size trailer holding the offset of the
+ * directory, so it can be found without reading the entries before it.
+ *
+ * @author Dev1Art
+ * @project HuffCompressor
+ */
+final class CentralDirectory {
+
+    // directory offset and format tag
+    private static final int TRAILER_SIZE = 12;
+
+    // can't be instancing
+    private CentralDirectory() {}
+
+    static void write(OutStream binaryOut, List<Entry> entries) {
+        binaryOut.align();
+        long offset = binaryOut.position();
+
+        binaryOut.writeVarLong(entries.size());
+        for (Entry entry : entries) {
+            byte[] bytes = entry.getPath().getBytes(StandardCharsets.UTF_8);
+            binaryOut.writeVarLong(bytes.length);
+            binaryOut.write(bytes);
+            binaryOut.write((byte) entry.getFlags());
+            binaryOut.writeVarLong(entry.getOffset());
+            binaryOut.writeVarLong(entry.getLength());
+            binaryOut.writeVarLong(entry.getStoredLength());
+            if (entry.isSolid()) binaryOut.writeVarLong(entry.getSolidOffset());
+            binaryOut.writeVarLong(entry.getModifiedTime());
+            if (entry.hasChecksum()) binaryOut.write(entry.getChecksum());
+        }
+
+        // trailer
+        binaryOut.write(offset);
+        binaryOut.write((Constants.HUFF_MAGIC << 8) | Constants.FORMAT_VERSION);
+    }
+
+    static List<Entry> read(File archive) {
+        long offset;
+        int version;
+        try (RandomAccessFile raf = new RandomAccessFile(archive, "r")) {
+            if (raf.length() < TRAILER_SIZE)
+                throw new RuntimeException("Missing central directory: " + archive);
+            raf.seek(raf.length() - TRAILER_SIZE);
+            offset = raf.readLong();
+            int tag = raf.readInt();
+            if ((tag >>> 8) != Constants.HUFF_MAGIC)
+                throw new RuntimeException("Missing central directory: " + archive);
+            version = tag & 0xff;
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Failed to read central directory: " + archive, e);
+        }
+
+        // counts and offsets took fixed 32 and 64 bits before they were variable-length
+        boolean isFixed = (version < Constants.LONG_FORMAT);
+
+        InStream binaryIn = new InStream(archive, offset);
+        long count = isFixed ? binaryIn.readInt() : binaryIn.readVarLong();
+        List<Entry> entries = new ArrayList<>();
+        for (long i = 0; i < count; ++i) {
+            byte[] bytes = new byte[Math.toIntExact(isFixed ? binaryIn.readInt() : binaryIn.readVarLong())];
+            for (int j = 0; j < bytes.length; ++j) {
+                bytes[j] = binaryIn.readByte();
+            }
+            String path = new String(bytes, StandardCharsets.UTF_8);
+            checkPath(path);
+
+            int flags = binaryIn.readByte() & 0xff;
+            if ((flags & ~Entry.KNOWN_FLAGS) != 0)
+                throw new RuntimeException("Unsupported flags of entry: " + path);
+            long entryOffset  = isFixed ? binaryIn.readLong() : binaryIn.readVarLong();
+            long length       = isFixed ? binaryIn.readLong() : binaryIn.readVarLong();
+            long storedLength = isFixed ? binaryIn.readLong() : binaryIn.readVarLong();
+            long solidOffset  = ((flags & Entry.SOLID) != 0) ? binaryIn.readVarLong() : 0;
+            long modifiedTime = (version >= Constants.TIMED_FORMAT) ? binaryIn.readVarLong() : 0;
+            int checksum      = ((flags & Entry.CHECKSUM) != 0) ? binaryIn.readInt() : 0;
+            entries.add(new Entry(path, flags, entryOffset, length, storedLength, solidOffset, modifiedTime, checksum));
+        }
+        binaryIn.close();
+        return entries;
+    }
+
+    // entries must stay inside the directory they are extracted to
+    private static void checkPath(String path) {
+        if (path.isEmpty() || path.startsWith("/") || path.contains("\\"))
+            throw new RuntimeException("Illegal entry path: " + path);
+        for (String name : path.split("/")) {
+            if (name.isEmpty() || name.equals(".") || name.equals(".."))
+                throw new RuntimeException("Illegal entry path: " + path);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package core;
+
+/**
+ * Receives the metrics of a {@link Compressor} run as it goes: every entry
+ * once its data is in the archive, and the archive once it is complete.
+ * Calls come from the thread writing the archive, one at a time, in archive
+ * order, so a listener needs no locking of its own but should return quickly.
+ *
+ * <p>The same metrics are committed as JDK Flight Recorder events, category
+ * {@code HuffCompressor}, whenever a recording has them enabled.
+ *
+ * @author Dev1Art
+ * @project HuffCompressor
+ */
+public interface CompressionListener {
+
+    default void entryCompressed(EntryMetrics metrics) {}
+
+    default void archiveCompressed(ArchiveMetrics metrics) {}
+}
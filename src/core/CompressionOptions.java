@@ -0,0 +1,163 @@
+package core;
+
+import huffman.Dictionary;
+
+/**
+ * Settings of a single {@link Compressor} run.
+ *
+ * @author Dev1Art
+ * @project HuffCompressor
+ */
+public class CompressionOptions {
+
+    // threads compressing the files of a directory
+    private int workers = Runtime.getRuntime().availableProcessors();
+
+    // bound on the size of files compressed ahead and not yet written to the archive
+    private long maxPendingBytes = 64L << 20;
+
+    // files estimated above this many bits per byte are stored raw, 8 never stores
+    private double maxEntropy = 7.8;
+
+    // build each file's code table from a sample rather than from the counts of every block
+    private boolean sampledTables;
+
+    // code tables a block may have, each used for the groups of bytes it suits best
+    private int tables = 1;
+
+    // window of the LZ77 stage in front of the Huffman coder, 0 for none
+    private int lzWindow;
+
+    // write files of the same content once, later copies refer to the first
+    private boolean deduplicate = true;
+
+    // files up to this size are packed into solid blocks by extension, 0 for none
+    private long solidThreshold;
+
+    // record a CRC32C of every file, so updates also catch changes size and time miss
+    private boolean checksums;
+
+    // trained code tables for small files of the types it covers, null for none
+    private Dictionary dictionary;
+
+    // told about every entry and the archive as they are written, null for none
+    private CompressionListener listener;
+
+    // counts the bytes processed as the job goes, null for none
+    private Progress progress;
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public CompressionOptions setWorkers(int workers) {
+        if (workers < 1) throw new IllegalArgumentException("Illegal number of workers = " + workers);
+        this.workers = workers;
+        return this;
+    }
+
+    public long getMaxPendingBytes() {
+        return maxPendingBytes;
+    }
+
+    public CompressionOptions setMaxPendingBytes(long maxPendingBytes) {
+        if (maxPendingBytes < 1) throw new IllegalArgumentException("Illegal pending bytes bound = " + maxPendingBytes);
+        this.maxPendingBytes = maxPendingBytes;
+        return this;
+    }
+
+    public double getMaxEntropy() {
+        return maxEntropy;
+    }
+
+    public CompressionOptions setMaxEntropy(double maxEntropy) {
+        if (maxEntropy < 0 || maxEntropy > 8) throw new IllegalArgumentException("Illegal entropy bound = " + maxEntropy);
+        this.maxEntropy = maxEntropy;
+        return this;
+    }
+
+    public boolean isSampledTables() {
+        return sampledTables;
+    }
+
+    public CompressionOptions setSampledTables(boolean sampledTables) {
+        this.sampledTables = sampledTables;
+        return this;
+    }
+
+    public int getTables() {
+        return tables;
+    }
+
+    public CompressionOptions setTables(int tables) {
+        if (tables < 1 || tables > 6) throw new IllegalArgumentException("Illegal number of tables = " + tables);
+        this.tables = tables;
+        return this;
+    }
+
+    public int getLzWindow() {
+        return lzWindow;
+    }
+
+    public CompressionOptions setLzWindow(int lzWindow) {
+        if (lzWindow != 0 && (lzWindow < 1 << 10 || lzWindow > 1 << 16 || Integer.bitCount(lzWindow) != 1))
+            throw new IllegalArgumentException("Illegal LZ77 window = " + lzWindow);
+        this.lzWindow = lzWindow;
+        return this;
+    }
+
+    public boolean isDeduplicate() {
+        return deduplicate;
+    }
+
+    public CompressionOptions setDeduplicate(boolean deduplicate) {
+        this.deduplicate = deduplicate;
+        return this;
+    }
+
+    public long getSolidThreshold() {
+        return solidThreshold;
+    }
+
+    public CompressionOptions setSolidThreshold(long solidThreshold) {
+        if (solidThreshold < 0) throw new IllegalArgumentException("Illegal solid threshold = " + solidThreshold);
+        this.solidThreshold = solidThreshold;
+        return this;
+    }
+
+    public boolean isChecksums() {
+        return checksums;
+    }
+
+    public CompressionOptions setChecksums(boolean checksums) {
+        this.checksums = checksums;
+        return this;
+    }
+
+    public Dictionary getDictionary() {
+        return dictionary;
+    }
+
+    public CompressionOptions setDictionary(Dictionary dictionary) {
+        this.dictionary = dictionary;
+        return this;
+    }
+
+    public CompressionListener getListener() {
+        return listener;
+    }
+
+    public CompressionOptions setListener(CompressionListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    public Progress getProgress() {
+        return progress;
+    }
+
+    public CompressionOptions setProgress(Progress progress) {
+        this.progress = progress;
+        return this;
+    }
+}
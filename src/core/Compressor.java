@@ -1,12 +1,40 @@
 package core;
 
 import data.Constants;
+import huffman.CodingStats;
+import huffman.Dictionary;
 import huffman.Huffman;
+import huffman.Segment;
 import io.InStream;
 import io.OutStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * @author DanielDFY, Dev1Art
@@ -14,52 +42,514 @@ import java.util.ArrayList;
  */
 public class Compressor {
 
+    private static final Logger LOGGER = Logger.getLogger(Compressor.class.getName());
+
+    // files up to this size are coded in memory first, their tables and headers may outweigh what coding saves
+    private static final long SMALL_FILE = 1 << 20;
+
     public static void compress(File src, OutStream binaryOut) {
+        compress(src, binaryOut, new CompressionOptions());
+    }
+
+    public static void compress(File src, OutStream binaryOut, CompressionOptions options) {
         if (null == src)
             throw new IllegalArgumentException("Null source file for compress");
 
-        if (src.isFile()) {
+        compress(src, binaryOut, options, null, new ArrayList<>());
+    }
+
+    /**
+     * Brings the archive up to date with the source it was made from. Files
+     * whose path, size and modification time, and checksum if the options ask
+     * for them, match an entry of the archive have their compressed data copied
+     * over as it is; only new and changed files are compressed, and files no
+     * longer in the source are dropped. The new archive is written next to the
+     * old one and replaces it once it is complete. A missing archive, or one
+     * of an older format, is compressed anew.
+     */
+    public static void update(File archive, File src, CompressionOptions options) {
+        if (null == archive || null == src)
+            throw new IllegalArgumentException("Null file for update");
+
+        // data of another format version can't be copied as it is
+        List<Entry> previous = (archive.isFile() && readFormatHead(archive) == Constants.FORMAT_VERSION)
+                ? list(archive) : new ArrayList<>();
+
+        File temp = new File(archive.getAbsoluteFile().getParentFile(), archive.getName() + ".part");
+        OutStream binaryOut = new OutStream(temp);
+        try {
+            compress(src, binaryOut, options, archive, previous);
+            binaryOut.close();
+            Files.move(temp.toPath(), archive.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e) {
+            temp.delete();
+            throw new RuntimeException("Failed to replace archive: " + archive, e);
+        }
+        catch (RuntimeException e) {
+            try {
+                binaryOut.close();
+            }
+            catch (RuntimeException closeFailure) {
+                e.addSuppressed(closeFailure);
+            }
+            temp.delete();
+            throw e;
+        }
+    }
+
+    // compress the source, copying the data of unchanged files from the previous archive if there is one
+    private static void compress(File src, OutStream binaryOut, CompressionOptions options,
+                                 File previousArchive, List<Entry> previous) {
+        ArchiveCompressedEvent event = new ArchiveCompressedEvent();
+        event.begin();
+        long start = System.nanoTime();
+
+        writeFormatHead(binaryOut);
+        ArchiveJob job = new ArchiveJob(binaryOut, options);
+        job.previousArchive = previousArchive;
+
+        listFiles(src, src.getName(), job);
+        if (options.getProgress() != null) {
+            long total = 0;
+            for (long length : job.lengths.values()) total += length;
+            options.getProgress().setTotal(total);
+        }
+        findUnchanged(previous, job);
+        if (options.isDeduplicate()) job.duplicates.putAll(Duplicates.find(job.lengths));
+
+        if (options.getSolidThreshold() > 0 && src.isDirectory()) {
+            // small files go into solid blocks ahead of all other data
+            Map<File, String> small = new LinkedHashMap<>();
+            job.paths.forEach((file, path) -> {
+                long length = job.lengths.get(file);
+                if (length > 0 && length <= options.getSolidThreshold() && isToCompress(file, job)
+                        && dictionaryTable(file, job) == null)
+                    small.put(file, path);
+            });
+            CodingStats solidCoding = codingStats(options);
+            job.solid.putAll(SolidBlocks.write(small, job.lengths, binaryOut, options, solidCoding));
+            job.coding.add(solidCoding);
+            job.solid.values().forEach(entry -> job.solidLengths.merge(entry.getOffset(), entry.getLength(), Long::sum));
+        }
+
+        if (options.getWorkers() == 1 || !src.isDirectory()) {
+            compressEntry(src, src.getName(), job);
+        } else {
+            // small files are compressed ahead by the workers, large ones split into blocks in place,
+            // duplicates are not compressed at all
+            long maxLength = options.getMaxPendingBytes() / options.getWorkers();
+            List<File> segments = new ArrayList<>();
+            for (File file : job.paths.keySet()) {
+                long length = job.lengths.get(file);
+                if (length > 0 && length <= maxLength && isToCompress(file, job) && !job.solid.containsKey(file)
+                        && dictionaryTable(file, job) == null)
+                    segments.add(file);
+            }
+            try (SegmentPipeline pipeline = new SegmentPipeline(segments, options)) {
+                job.pipeline = pipeline;
+                compressEntry(src, src.getName(), job);
+            }
+        }
+
+        CentralDirectory.write(binaryOut, job.entries);
+
+        CompressionListener listener = options.getListener();
+        if (listener != null || event.isEnabled()) {
+            long bytesIn = 0;
+            for (long length : job.lengths.values()) bytesIn += length;
+            ArchiveMetrics metrics = new ArchiveMetrics(job.entries.size(), bytesIn, binaryOut.position(),
+                    System.nanoTime() - start, job.coding);
+            if (listener != null) listener.archiveCompressed(metrics);
+            if (event.shouldCommit()) {
+                event.set(metrics);
+                event.commit();
+            }
+        }
+    }
+
+    // state of writing one archive, shared by the entries written into it
+    private static final class ArchiveJob {
+        final OutStream binaryOut;
+        final CompressionOptions options;
+        final List<Entry> entries = new ArrayList<>();
+        final Map<File, String> paths = new LinkedHashMap<>();  // files to compress in archive order, to their paths
+        final Map<File, Long> lengths = new LinkedHashMap<>();  // sizes of the files when they were listed
+        final Map<File, Long> modifiedTimes = new HashMap<>();  // times of the files when they were listed
+        final Map<File, Integer> checksums = new HashMap<>();   // CRC32C of the files, once computed
+        final Map<File, File> duplicates = new HashMap<>();     // later copies of a content, to its first file
+        final Map<File, Entry> written = new HashMap<>();       // entries of the files duplicates refer to
+        final Map<File, Entry> solid = new HashMap<>();         // entries of the files already in solid blocks
+        final Map<File, Entry> unchanged = new HashMap<>();     // entries of the previous archive to copy
+        final Map<Long, Long> copied = new HashMap<>();         // offsets of data copied, in both archives
+        final Map<Long, Long> solidLengths = new HashMap<>();   // bytes of the files of every solid block
+        final CodingStats coding = new CodingStats();           // coding of all entries so far
+        File previousArchive;                                   // archive being updated, null if none
+        SegmentPipeline pipeline;                               // workers compressing ahead, null if none
+        EntryMetrics.Method method;                             // how the last entry was written, if not by its flags
+        CodingStats entryCoding;                                // coding of the last entry, null if not coded on its own
+
+        ArchiveJob(OutStream binaryOut, CompressionOptions options) {
+            this.binaryOut = binaryOut;
+            this.options = options;
+        }
+    }
+
+    /**
+     * Compresses everything read from {@code in} in a single pass, for input
+     * that can't be sized or read twice, such as a pipe. Output is written and
+     * flushed chunk by chunk while the input is still coming in.
+     */
+    public static void compress(InputStream in, OutputStream out) {
+        if (null == in)
+            throw new IllegalArgumentException("Null source stream for compress");
+
+        OutStream binaryOut = new OutStream(out);
+        writeHead(binaryOut, Constants.STREAM_MAGIC, Constants.STREAM_VERSION);
+        Huffman.compress(in, binaryOut);
+        binaryOut.flush();
+    }
+
+    // decompress a stream written by compress(InputStream, OutputStream)
+    public static void decompress(InputStream in, OutputStream out) {
+        if (null == in)
+            throw new IllegalArgumentException("Null source stream for decompress");
+
+        InStream binaryIn = new InStream(in);
+        if (binaryIn.peekBits(24) != Constants.STREAM_MAGIC)
+            throw new RuntimeException("Not a compressed stream");
+        binaryIn.skipBits(24);
+        int version = binaryIn.readChar();
+        if (version > Constants.STREAM_VERSION)
+            throw new RuntimeException("Unsupported stream version: " + version);
+
+        Huffman.decompress(binaryIn, out);
+    }
+
+    // list the files with their entry paths and sizes, in the order they are written to the archive,
+    // looking every file up once since trees of many small files spend most time on it
+    private static void listFiles(File src, String path, ArchiveJob job) {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(src.toPath(), BasicFileAttributes.class);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Failed to read attributes of: " + src, e);
+        }
+
+        if (attributes.isDirectory()) {
+            for (File file : listContents(src)) {
+                listFiles(file, path + "/" + file.getName(), job);
+            }
+        } else if (attributes.isRegularFile()) {
+            job.paths.put(src, path);
+            job.lengths.put(src, attributes.size());
+            job.modifiedTimes.put(src, attributes.lastModifiedTime().toMillis());
+        }
+    }
+
+    // entries of the previous archive whose file is still the same
+    private static void findUnchanged(List<Entry> previous, ArchiveJob job) {
+        Map<String, Entry> byPath = new HashMap<>();
+        for (Entry entry : previous) {
+            if (!entry.isDirectory()) byPath.put(entry.getPath(), entry);
+        }
+
+        job.paths.forEach((file, path) -> {
+            Entry entry = byPath.get(path);
+            if (entry == null || entry.getLength() == 0) return;
+            if (entry.getLength() != job.lengths.get(file) || entry.getModifiedTime() != job.modifiedTimes.get(file))
+                return;
+            if (job.options.isChecksums() && (!entry.hasChecksum() || entry.getChecksum() != checksum(file, job)))
+                return;
+            // the archive has to stay readable with the one dictionary it is compressed with now
+            if (entry.isDictionaryCoded() && !hasDictionaryTable(job.previousArchive, entry, job.options))
+                return;
+            job.unchanged.put(file, entry);
+        });
+    }
+
+    private static boolean hasDictionaryTable(File archive, Entry entry, CompressionOptions options) {
+        if (options.getDictionary() == null) return false;
+        InStream binaryIn = new InStream(archive, entry.getOffset());
+        binaryIn.readVarLong();
+        binaryIn.align();
+        int tableId = binaryIn.readInt();
+        binaryIn.close();
+        return options.getDictionary().hasTable(tableId);
+    }
+
+    // whether the file's data still has to be compressed, rather than taken from elsewhere
+    private static boolean isToCompress(File file, ArchiveJob job) {
+        return !job.duplicates.containsKey(file) && !job.unchanged.containsKey(file);
+    }
+
+    // ID of the dictionary table to code the file with, null if it gets tables of its own
+    private static Integer dictionaryTable(File file, ArchiveJob job) {
+        Dictionary dictionary = job.options.getDictionary();
+        if (dictionary == null || job.lengths.get(file) > Dictionary.MAX_LENGTH) return null;
+        return dictionary.tableId(file.getName());
+    }
+
+    private static int checksum(File file, ArchiveJob job) {
+        // copies share the checksum of the first file of their content
+        File original = job.duplicates.getOrDefault(file, file);
+        return job.checksums.computeIfAbsent(original, f -> (int) Duplicates.hash(f));
+    }
+
+    private static void writeFormatHead(OutStream binaryOut) {
+        writeHead(binaryOut, Constants.HUFF_MAGIC, Constants.FORMAT_VERSION);
+    }
+
+    private static void writeHead(OutStream binaryOut, int magic, int version) {
+        binaryOut.write((char) (magic >>> 16));
+        binaryOut.write((char) ((magic >>> 8) & 0xff));
+        binaryOut.write((char) (magic & 0xff));
+        binaryOut.write((char) version);
+    }
+
+    private static void compressEntry(File src, String path, ArchiveJob job) {
+        if (job.lengths.containsKey(src)) {
             // compress single file
-            compressFile(src, binaryOut);
+            compressFile(src, path, job);
         } else if (src.isDirectory()) {
             // compress directory
-            compressDir(src, binaryOut);
+            compressDir(src, path, job);
         } else
             throw new RuntimeException("Unknown kind of source");
     }
 
-    private static void compressFile(File file, OutStream binaryOut) {
+    private static void compressFile(File file, String path, ArchiveJob job) {
         assert file.isFile();
+        if (Thread.currentThread().isInterrupted()) throw new CancellationException("Interrupted while compressing");
+
+        EntryCompressedEvent event = new EntryCompressedEvent();
+        event.begin();
+        long start = System.nanoTime();
+        long offset = job.binaryOut.position();
+        job.method = null;
+        job.entryCoding = null;
 
-        String fileName = file.getName();
-        boolean isEmptyFile = (file.length() == 0);
+        // every entry carries the time of its own file, for updates to compare
+        Entry entry = writeFile(file, path, job).stamped(job.modifiedTimes.get(file));
+        if (job.options.isChecksums()) entry = entry.checked(checksum(file, job));
 
-        // write file info
-        writeFileHead(fileName, isEmptyFile, binaryOut);
+        job.entries.add(entry);
+        job.written.put(file, entry);
 
-        // only compress non-empty file
-        if (!isEmptyFile) {
-            InStream binaryIn = new InStream(file);
-            Huffman.compress(binaryIn, binaryOut);
+        if (job.entryCoding != null) job.coding.add(job.entryCoding);
+
+        // coded entries counted their bytes as they went, solid ones in their block
+        Progress progress = job.options.getProgress();
+        if (progress != null && job.entryCoding == null && job.method != EntryMetrics.Method.SOLID)
+            progress.add(entry.getLength());
+        CompressionListener listener = job.options.getListener();
+        if (listener != null || event.isEnabled()) {
+            EntryMetrics metrics = new EntryMetrics(path, method(entry, job), entry.getLength(),
+                    bytesOut(entry, offset, job), System.nanoTime() - start, job.entryCoding);
+            if (listener != null) listener.entryCompressed(metrics);
+            if (event.shouldCommit()) {
+                event.set(metrics);
+                event.commit();
+            }
         }
     }
 
-    private static void writeFileHead(String fileName, boolean isEmptyFile, OutStream binaryOut) {
-        // to signal file header
-        binaryOut.write(Constants.FILE_BIT);
+    private static EntryMetrics.Method method(Entry entry, ArchiveJob job) {
+        if (job.method != null) return job.method;
+        if (entry.getLength() == 0) return EntryMetrics.Method.EMPTY;
+        if (entry.isStored()) return EntryMetrics.Method.STORED;
+        if (entry.isDictionaryCoded()) return EntryMetrics.Method.DICTIONARY;
+        return entry.isLz77() ? EntryMetrics.Method.LZ77 : EntryMetrics.Method.HUFFMAN;
+    }
+
+    // bytes the entry added to the archive, solid entries taking their share of the block
+    private static long bytesOut(Entry entry, long offset, ArchiveJob job) {
+        if (job.method != EntryMetrics.Method.SOLID) return job.binaryOut.position() - offset;
+        return Math.round((double) entry.getStoredLength() * entry.getLength() / job.solidLengths.get(entry.getOffset()));
+    }
+
+    // write the data of the file, or find it already written, and make its entry
+    private static Entry writeFile(File file, String path, ArchiveJob job) {
+        File original = job.duplicates.get(file);
+        if (original != null) {
+            // same content as a file already written, refer to its data
+            job.method = EntryMetrics.Method.DUPLICATE;
+            return job.written.get(original).at(path);
+        }
+
+        Entry solid = job.solid.get(file);
+        if (solid != null) {
+            job.method = EntryMetrics.Method.SOLID;
+            return solid;
+        }
 
-        // write in file name info
-        byte[] bytes = fileName.getBytes();
-        binaryOut.write(bytes.length);
-        binaryOut.write(bytes);
+        Entry unchanged = job.unchanged.get(file);
+        if (unchanged != null) {
+            job.method = EntryMetrics.Method.UNCHANGED;
+            return copy(unchanged, job);
+        }
 
-        // to signal whether its empty
-        binaryOut.write(isEmptyFile);
+        OutStream binaryOut = job.binaryOut;
+        SegmentPipeline pipeline = job.pipeline;
+        CompressionOptions options = job.options;
+        long offset = binaryOut.position();
+        long length;
+        int flags = 0;
+        Integer tableId = dictionaryTable(file, job);
+
+        if (job.lengths.get(file) > 0 && tableId != null) {
+            // small file of a type the dictionary has a table for, its coding only counts if it is kept
+            CodingStats coding = new CodingStats();
+            Segment segment = compressWithDictionary(file, job.lengths.get(file), tableId, options, coding);
+            if (segment == null) {
+                length = store(file, binaryOut);
+                flags = Entry.STORED;
+            } else {
+                job.entryCoding = coding;
+                length = segment.length();
+                Huffman.write(segment, binaryOut);
+                flags = Entry.DICTIONARY;
+                if (options.getProgress() != null) options.getProgress().add(length);
+            }
+        } else if (pipeline != null && pipeline.isNext(file)) {
+            // already compressed by the workers
+            Segment segment = pipeline.take();
+            if (segment == null) {
+                length = store(file, binaryOut);
+                flags = Entry.STORED;
+            } else {
+                length = segment.length();
+                flags = writeSegment(segment, job);
+            }
+        } else if (job.lengths.get(file) == 0) {
+            // only compress non-empty file
+            length = 0;
+        } else if (job.lengths.get(file) <= SMALL_FILE) {
+            // kept only if it shrinks, tables and headers included
+            Segment segment = compressSegment(file, options);
+            if (segment == null) {
+                length = store(file, binaryOut);
+                flags = Entry.STORED;
+            } else {
+                length = segment.length();
+                flags = writeSegment(segment, job);
+            }
+        } else {
+            long[] sample = sample(file, options);
+            if (isIncompressible(sample, options)) {
+                length = store(file, binaryOut);
+                flags = Entry.STORED;
+            } else {
+                job.entryCoding = codingStats(options);
+                length = Huffman.compress(file, binaryOut, options.isSampledTables() ? sample : null,
+                        options.getTables(), options.getLzWindow(), job.entryCoding);
+                flags = codingFlags(options);
+            }
+        }
+
+        return new Entry(path, flags, offset, length, binaryOut.position() - offset);
+    }
+
+    // copy the data of an unchanged entry from the previous archive, once for all entries sharing it
+    private static Entry copy(Entry previous, ArchiveJob job) {
+        Long offset = job.copied.get(previous.getOffset());
+        if (offset == null) {
+            offset = job.binaryOut.position();
+            job.binaryOut.transferFrom(job.previousArchive, previous.getOffset(), previous.getStoredLength());
+            job.copied.put(previous.getOffset(), offset);
+        }
+        return previous.movedTo(offset);
+    }
+
+    /**
+     * Compresses the file in memory, for the pipeline or as a small file, null
+     * if it is to be stored raw: when it is too close to random to try, or
+     * doesn't get smaller. Its coding counts as progress once it is written.
+     */
+    static Segment compressSegment(File file, CompressionOptions options) {
+        long[] sample = sample(file, options);
+        if (isIncompressible(sample, options)) return null;
+        Segment segment = Huffman.compressSegment(file, options.isSampledTables() ? sample : null,
+                options.getTables(), options.getLzWindow(), new CodingStats());
+        return isSmaller(segment) ? segment : null;
     }
 
-    private static void compressDir(File dir, OutStream binaryOut) {
+    // write the file's segment and return the entry's flags
+    private static int writeSegment(Segment segment, ArchiveJob job) {
+        job.entryCoding = segment.stats();
+        Huffman.write(segment, job.binaryOut);
+        Progress progress = job.options.getProgress();
+        if (progress != null) progress.add(segment.length());
+        return codingFlags(job.options);
+    }
+
+    // whether the segment with the length written ahead of it takes less room than the raw data
+    private static boolean isSmaller(Segment segment) {
+        int header = (64 - Long.numberOfLeadingZeros(segment.length() | 1) + 6) / 7;
+        return header + segment.size() < segment.length();
+    }
+
+    // code the file with a dictionary table, null if it doesn't get smaller and is to be stored raw
+    private static Segment compressWithDictionary(File file, long length, int tableId, CompressionOptions options,
+                                                  CodingStats stats) {
+        byte[] data = new byte[(int) length];
+        try (FileInputStream in = new FileInputStream(file)) {
+            if (in.readNBytes(data, 0, data.length) != data.length || in.read() != -1)
+                throw new IllegalStateException("File changed while compressing: " + file);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Failed to read: " + file, e);
+        }
+        Segment segment = Huffman.compressSegment(data, options.getDictionary(), tableId, stats);
+        return isSmaller(segment) ? segment : null;
+    }
+
+    // stats of coding some data, counting its bytes as progress if the options watch it
+    private static CodingStats codingStats(CompressionOptions options) {
+        return (options.getProgress() != null) ? options.getProgress().stats() : new CodingStats();
+    }
+
+    // flags of an entry coded with the options, for the reader to undo the same stages
+    private static int codingFlags(CompressionOptions options) {
+        return (options.getLzWindow() > 0) ? Entry.LZ77 : 0;
+    }
+
+    // byte counts sampled from the file, null if no option needs them
+    private static long[] sample(File file, CompressionOptions options) {
+        if (options.getMaxEntropy() < 8 || options.isSampledTables())
+            return Huffman.sample(file);
+        return null;
+    }
+
+    // whether the file is too close to random for Huffman coding to pay off
+    private static boolean isIncompressible(long[] sample, CompressionOptions options) {
+        return options.getMaxEntropy() < 8 && Huffman.entropy(sample) > options.getMaxEntropy();
+    }
+
+    // copy the file into the archive as is
+    private static long store(File file, OutStream binaryOut) {
+        long length = file.length();
+        binaryOut.transferFrom(file, 0, length);
+        return length;
+    }
+
+    private static void compressDir(File dir, String path, ArchiveJob job) {
         assert dir.isDirectory();
 
+        List<File> list = listContents(dir);
+        if (list.isEmpty()) throw new RuntimeException("Nothing to compress");
+
+        job.entries.add(new Entry(path, Entry.DIRECTORY, job.binaryOut.position(), 0, 0));
+
+        // compress each content respectively
+        for (File file : list) {
+            compressEntry(file, path + "/" + file.getName(), job);
+        }
+    }
+
+    // contents of the directory to compress, sorted by name so archives are reproducible
+    private static List<File> listContents(File dir) {
         File[] files = dir.listFiles();
 
         if (null == files)
@@ -74,52 +564,248 @@ public class Compressor {
             }
             list.add(file);
         }
-        int length = list.size();
-        if (length == 0) throw new RuntimeException("Nothing to compress");
+        list.sort(Comparator.comparing(File::getName));
+        return list;
+    }
 
-        writeDirHead(dir.getName(), length, binaryOut);
+    // entries of the archive, read from its central directory without decoding any data
+    public static List<Entry> list(File archive) {
+        if (readFormatHead(archive) < Constants.INDEXED_FORMAT)
+            throw new RuntimeException("Archive has no central directory: " + archive);
+        return CentralDirectory.read(archive);
+    }
 
-        // compress each content respectively
-        for (File file : list) {
-            compress(file, binaryOut);
+    public static void extract(File archive, String glob, File target) {
+        extract(archive, glob, target, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Extracts the entries whose path matches the glob into the target directory.
+     * Every file is decoded through its own reader, {@code workers} files at a time.
+     */
+    public static void extract(File archive, String glob, File target, int workers) {
+        extract(archive, glob, target, workers, null);
+    }
+
+    /**
+     * Like {@link #extract(File, String, File, int)}, for archives with entries
+     * coded with tables of the dictionary.
+     */
+    public static void extract(File archive, String glob, File target, int workers, Dictionary dictionary) {
+        extract(archive, glob, target, workers, dictionary, null);
+    }
+
+    /**
+     * Like {@link #extract(File, String, File, int, Dictionary)}, counting the
+     * bytes of the files written into {@code progress}, unless it is null. If
+     * extraction fails or the thread is interrupted, the files of the matching
+     * entries and the directories made for them are removed again.
+     */
+    public static void extract(File archive, String glob, File target, int workers, Dictionary dictionary,
+                               Progress progress) {
+        int version = readFormatHead(archive);
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        List<Entry> files = new ArrayList<>();
+        List<File> madeDirs = new ArrayList<>();
+        Set<File> started = ConcurrentHashMap.newKeySet();    // files being written, to remove if it fails
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        boolean complete = false;
+        try {
+            long total = 0;
+            for (Entry entry : list(archive)) {
+                if (!matcher.matches(Paths.get(entry.getPath()))) continue;
+
+                File file = new File(target, entry.getPath());
+                makeDirs(entry.isDirectory() ? file : file.getParentFile(), madeDirs);
+                if (!entry.isDirectory()) {
+                    files.add(entry);
+                    total += entry.getLength();
+                }
+            }
+            if (progress != null) progress.setTotal(total);
+
+            // files of one solid block are extracted together, from one decompression of it
+            List<Future<?>> futures = new ArrayList<>();
+            Map<Long, List<Entry>> solidBlocks = new LinkedHashMap<>();
+            for (Entry entry : files) {
+                if (entry.isSolid()) {
+                    solidBlocks.computeIfAbsent(entry.getOffset(), k -> new ArrayList<>()).add(entry);
+                    continue;
+                }
+                if (entry.isDictionaryCoded() && dictionary == null)
+                    throw new RuntimeException("Entry needs a dictionary to extract: " + entry.getPath());
+                futures.add(executor.submit(() -> {
+                    File file = new File(target, entry.getPath());
+                    started.add(file);
+                    extractFile(archive, version, entry, file, dictionary, progress);
+                }));
+            }
+            for (List<Entry> block : solidBlocks.values()) {
+                futures.add(executor.submit(() -> {
+                    if (Thread.currentThread().isInterrupted()) throw new CancellationException("Interrupted while extracting");
+                    block.forEach(entry -> started.add(new File(target, entry.getPath())));
+                    SolidBlocks.extract(archive, version, block, target);
+                    if (progress != null) block.forEach(entry -> progress.add(entry.getLength()));
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            // files get back the time they had when compressed, once all data is written
+            for (Entry entry : files) {
+                if (entry.getModifiedTime() > 0)
+                    new File(target, entry.getPath()).setLastModified(entry.getModifiedTime());
+            }
+            complete = true;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while extracting");
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+            if (!complete) removePartial(executor, started, madeDirs);
         }
     }
 
-    private static void writeDirHead(String dirName, int length, OutStream binaryOut) {
-        // to signal the directory header
-        binaryOut.write(Constants.DIR_BIT);
+    // make the directory and the missing ones above it, noting every one made
+    private static void makeDirs(File dir, List<File> madeDirs) {
+        if (dir.isDirectory()) return;
+        List<File> missing = new ArrayList<>();
+        for (File d = dir; d != null && !d.exists(); d = d.getParentFile()) missing.add(d);
+        if (!dir.mkdirs()) throw new RuntimeException("Failed to make dir: " + dir);
+        madeDirs.addAll(missing);
+    }
 
-        // write in directory name info
-        byte[] bytes = dirName.getBytes();
-        binaryOut.write(bytes.length);
-        binaryOut.write(bytes);
+    /**
+     * Removes what a failed extraction wrote: the files it started, whole or
+     * not, and the directories it made, once no worker writes any more.
+     */
+    private static void removePartial(ExecutorService executor, Set<File> started, List<File> madeDirs) {
+        // an interrupted thread can't wait, so the interrupt is put back afterwards
+        boolean interrupted = Thread.interrupted();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES))
+                LOGGER.log(Level.WARNING, "Extraction workers still running, partial files may remain");
+        }
+        catch (InterruptedException e) {
+            interrupted = true;
+        }
 
-        if (length == 0) {
-            binaryOut.write(Constants.EMPTY_BIT);      // true for empty directory
-        } else {
-            binaryOut.write(Constants.NON_EMPTY_BIT);  // false for non-empty directory
-            binaryOut.write(length);
+        for (File file : started) {
+            file.delete();
+        }
+        // deepest directories first, every one made empty by removing the ones below
+        madeDirs.sort(Comparator.comparing((File dir) -> dir.getPath().length()).reversed());
+        for (File dir : madeDirs) {
+            dir.delete();
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    private static void extractFile(File archive, int version, Entry entry, File file, Dictionary dictionary,
+                                    Progress progress) {
+        if (Thread.currentThread().isInterrupted()) throw new CancellationException("Interrupted while extracting");
+
+        if (entry.getLength() == 0) {
+            new OutStream(file).close();
+            return;
+        }
+        if (entry.isStored()) {
+            OutStream binaryOut = new OutStream(file);
+            binaryOut.transferFrom(archive, entry.getOffset(), entry.getLength());
+            binaryOut.close();
+            if (progress != null) progress.add(entry.getLength());
+            return;
+        }
+        InStream binaryIn = new InStream(archive, entry.getOffset(), entry.getStoredLength());
+        try {
+            if (entry.isDictionaryCoded()) {
+                Huffman.decompress(binaryIn, file, dictionary);
+                if (progress != null) progress.add(entry.getLength());
+            } else {
+                Huffman.decompress(binaryIn, file, version, entry.isLz77(), (progress != null) ? progress.stats() : null);
+            }
+        }
+        finally {
+            binaryIn.close();
         }
     }
 
     public static void decompress(File file) {
+        decompress(file, null);
+    }
+
+    /**
+     * Decompresses the archive next to itself, counting the bytes written into
+     * {@code progress} for archives with a central directory, unless it is null.
+     */
+    public static void decompress(File file, Progress progress) {
         if (null == file)
             throw new IllegalArgumentException("Null source file for decompress");
 
+        decompress(file, new File(file.getAbsoluteFile().getParent()), progress);
+    }
+
+    // like decompress(File, Progress), into the target directory
+    public static void decompress(File file, File target, Progress progress) {
+        decompress(file, target, Runtime.getRuntime().availableProcessors(), null, progress);
+    }
+
+    /**
+     * Like decompress(File, File, Progress), extracting archives with a central
+     * directory on {@code workers} threads with the tables of the dictionary,
+     * which may be null. Archives of older formats need neither.
+     */
+    public static void decompress(File file, File target, int workers, Dictionary dictionary, Progress progress) {
+        if (null == file || null == target)
+            throw new IllegalArgumentException("Null file for decompress");
+
         // supports only .huff extension
-        String fileName = file.getName();
-        String suffix = fileName.substring(fileName.lastIndexOf("."));
-        if (!suffix.equals(Constants.HUFF_SUFFIX))
+        if (!file.getName().endsWith(Constants.HUFF_SUFFIX))
             throw new RuntimeException("Unsupported file suffix");
 
-        File parent = new File(file.getAbsoluteFile().getParent());
-        decompress(parent, new InStream(file));
+        int version = readFormatHead(file);
+        if (version >= Constants.INDEXED_FORMAT) {
+            extract(file, "**", target, workers, dictionary, progress);
+            return;
+        }
+        // archives without a directory are decoded from start to end
+        InStream binaryIn = new InStream(file, 0, file.length());
+        readFormatHead(binaryIn);
+        decompress(target, binaryIn, version);
+        binaryIn.close();
+    }
+
+    private static int readFormatHead(File archive) {
+        InStream binaryIn = new InStream(archive);
+        int version = readFormatHead(binaryIn);
+        binaryIn.close();
+        return version;
     }
 
-    private static void decompress(File parent, InStream binaryIn) {
+    private static int readFormatHead(InStream binaryIn) {
+        // archives written before the format header start right with the first entry
+        if (binaryIn.peekBits(24) != Constants.HUFF_MAGIC)
+            return Constants.LEGACY_FORMAT;
+
+        binaryIn.skipBits(24);
+        int version = binaryIn.readChar();
+        if (version > Constants.FORMAT_VERSION)
+            throw new RuntimeException("Unsupported format version: " + version);
+        return version;
+    }
+
+    // read an archive written before the central directory, one entry after another
+    private static void decompress(File parent, InStream binaryIn, int version) {
         if (binaryIn.readBoolean() == Constants.FILE_BIT) {
             // expand single file
-            decompressFile(parent, binaryIn);
+            decompressFile(parent, binaryIn, version);
         } else {
             // decompress directory
             // get name info
@@ -140,12 +826,12 @@ public class Compressor {
                 // decompress each content respectively
                 int length = binaryIn.readInt();
                 for (int i = 0; i < length; ++i) {
-                    decompress(dir, binaryIn);
+                    decompress(dir, binaryIn, version);
                 }
             }
         }
     }
-    private static void decompressFile(File parent, InStream binaryIn) {
+    private static void decompressFile(File parent, InStream binaryIn, int version) {
         // get name info
         int nameLength = binaryIn.readInt();
         byte[] bytes = new byte[nameLength];
@@ -155,12 +841,12 @@ public class Compressor {
 
         // deal with chinese file name
         String fileName = new String(bytes, StandardCharsets.UTF_8);
-        OutStream binaryOut = new OutStream(new File(parent, fileName));
+        File file = new File(parent, fileName);
 
         if (binaryIn.readBoolean() != Constants.EMPTY_BIT) {
-            Huffman.decompress(binaryIn, binaryOut);
+            Huffman.decompress(binaryIn, file, version);
+        } else {
+            new OutStream(file).close();
         }
-
-        binaryOut.close();
     }
 }
\ No newline at end of file
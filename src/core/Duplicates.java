@@ -0,0 +1,106 @@
+package core;
+
+import io.InStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Finds files of the same content, so an archive holds every content once.
+ *
+ * <p>Only files sharing their size with another file are read. They are
+ * hashed with CRC32C, and files of the same hash are then compared byte by
+ * byte, so a hash collision never merges two different files.
+ *
+ * @author Dev1Art
+ * @project HuffCompressor
+ */
+final class Duplicates {
+
+    // bytes read from a file at a time
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    // can't be instancing
+    private Duplicates() {}
+
+    /**
+     * Maps every file whose content appeared earlier in the given order to the
+     * first file with that content. Empty files are left out, they have no data to share.
+     *
+     * @param files the files in archive order, mapped to their sizes
+     */
+    static Map<File, File> find(Map<File, Long> files) {
+        Map<Long, List<File>> bySize = new LinkedHashMap<>();
+        files.forEach((file, length) -> {
+            if (length > 0) bySize.computeIfAbsent(length, k -> new ArrayList<>()).add(file);
+        });
+
+        Map<File, File> duplicates = new HashMap<>();
+        for (List<File> sameSize : bySize.values()) {
+            if (sameSize.size() < 2) continue;
+
+            // files of one hash, first the earliest of every distinct content among them
+            Map<Long, List<File>> byHash = new LinkedHashMap<>();
+            for (File file : sameSize) {
+                List<File> originals = byHash.computeIfAbsent(hash(file), k -> new ArrayList<>());
+                File original = null;
+                for (File candidate : originals) {
+                    if (sameContent(candidate, file)) {
+                        original = candidate;
+                        break;
+                    }
+                }
+                if (original == null) originals.add(file);
+                else duplicates.put(file, original);
+            }
+        }
+        return duplicates;
+    }
+
+    // CRC32C of the whole file
+    static long hash(File file) {
+        CRC32C crc = new CRC32C();
+        byte[] chunk = new byte[CHUNK_SIZE];
+        InStream binaryIn = new InStream(file);
+        int n;
+        while ((n = binaryIn.read(chunk, 0, chunk.length)) > 0) {
+            crc.update(chunk, 0, n);
+        }
+        binaryIn.close();
+        return crc.getValue();
+    }
+
+    private static boolean sameContent(File a, File b) {
+        InStream inA = new InStream(a);
+        InStream inB = new InStream(b);
+        byte[] chunkA = new byte[CHUNK_SIZE];
+        byte[] chunkB = new byte[CHUNK_SIZE];
+        try {
+            while (true) {
+                int n = readFully(inA, chunkA);
+                if (n != readFully(inB, chunkB)) return false;
+                if (n == 0) return true;
+                if (!Arrays.equals(chunkA, 0, n, chunkB, 0, n)) return false;
+            }
+        }
+        finally {
+            inA.close();
+            inB.close();
+        }
+    }
+
+    private static int readFully(InStream binaryIn, byte[] b) {
+        int count = 0;
+        while (count < b.length) {
+            int n = binaryIn.read(b, count, b.length - count);
+            if (n == -1) break;
+            count += n;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,122 @@
+package core;
+
+/**
+ * A file or directory recorded in the central directory of an archive.
+ *
+ * @author Dev1Art
+ * @project HuffCompressor
+ */
+public final class Entry {
+
+    // flag bits
+    static final int DIRECTORY = 1;
+    static final int STORED = 2;        // data copied as is, not Huffman coded
+    static final int LZ77 = 4;          // blocks hold LZ77 sequences, restored after Huffman decoding
+    static final int SOLID = 8;         // data is a solid block shared with other small files
+    static final int CHECKSUM = 16;     // a CRC32C of the file is recorded
+    static final int DICTIONARY = 32;   // coded with a table of a dictionary, by its ID
+    static final int KNOWN_FLAGS = DIRECTORY | STORED | LZ77 | SOLID | CHECKSUM | DICTIONARY;
+
+    private final String path;         // '/' separated, starting with the name of the compressed root
+    private final int flags;
+    private final long offset;         // first byte of the entry's data in the archive
+    private final long length;         // bytes of the original uncompressed data
+    private final long storedLength;   // bytes of the entry's data in the archive
+    private final long solidOffset;    // first byte of the file in its decompressed solid block
+    private final long modifiedTime;   // of the file when it was compressed, in milliseconds, 0 if unknown
+    private final int checksum;        // CRC32C of the file, if flagged
+
+    Entry(String path, int flags, long offset, long length, long storedLength) {
+        this(path, flags, offset, length, storedLength, 0);
+    }
+
+    Entry(String path, int flags, long offset, long length, long storedLength, long solidOffset) {
+        this(path, flags, offset, length, storedLength, solidOffset, 0, 0);
+    }
+
+    Entry(String path, int flags, long offset, long length, long storedLength, long solidOffset,
+          long modifiedTime, int checksum) {
+        this.path         = path;
+        this.flags        = flags;
+        this.offset       = offset;
+        this.length       = length;
+        this.storedLength = storedLength;
+        this.solidOffset  = solidOffset;
+        this.modifiedTime = modifiedTime;
+        this.checksum     = checksum;
+    }
+
+    // the same data under another path
+    Entry at(String path) {
+        return new Entry(path, flags, offset, length, storedLength, solidOffset, modifiedTime, checksum);
+    }
+
+    // the same data at another offset, once copied into another archive
+    Entry movedTo(long offset) {
+        return new Entry(path, flags, offset, length, storedLength, solidOffset, modifiedTime, checksum);
+    }
+
+    Entry stamped(long modifiedTime) {
+        return new Entry(path, flags, offset, length, storedLength, solidOffset, modifiedTime, checksum);
+    }
+
+    Entry checked(int checksum) {
+        return new Entry(path, flags | CHECKSUM, offset, length, storedLength, solidOffset, modifiedTime, checksum);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public boolean isDirectory() {
+        return (flags & DIRECTORY) != 0;
+    }
+
+    public boolean isStored() {
+        return (flags & STORED) != 0;
+    }
+
+    public boolean isLz77() {
+        return (flags & LZ77) != 0;
+    }
+
+    public boolean isSolid() {
+        return (flags & SOLID) != 0;
+    }
+
+    public boolean isDictionaryCoded() {
+        return (flags & DICTIONARY) != 0;
+    }
+
+    public boolean hasChecksum() {
+        return (flags & CHECKSUM) != 0;
+    }
+
+    int getFlags() {
+        return flags;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public long getStoredLength() {
+        return storedLength;
+    }
+
+    public long getSolidOffset() {
+        return solidOffset;
+    }
+
+    public long getModifiedTime() {
+        return modifiedTime;
+    }
+
+    public int getChecksum() {
+        return checksum;
+    }
+}
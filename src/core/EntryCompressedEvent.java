@@ -0,0 +1,80 @@
+package core;
+
+import huffman.CodingStats;
+import huffman.CodingStats.Phase;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event of an entry written into an archive, lasting from
+ * the start of the entry until its data was in the archive.
+ *
+ * @author Dev1Art
+ * @project HuffCompressor
+ */
+@Name("huffcompressor.EntryCompressed")
+@Label("Entry Compressed")
+@Category("HuffCompressor")
+@Description("A file written into an archive")
+@StackTrace(false)
+final class EntryCompressedEvent extends jdk.jfr.Event {
+
+    @Label("Path")
+    String path;
+
+    @Label("Method")
+    String method;
+
+    @Label("Bytes In")
+    @DataAmount
+    long bytesIn;
+
+    @Label("Bytes Out")
+    @DataAmount
+    long bytesOut;
+
+    @Label("Histogram Time")
+    @Timespan
+    long histogramTime;
+
+    @Label("Tree Build Time")
+    @Timespan
+    long treeTime;
+
+    @Label("LZ77 Time")
+    @Timespan
+    long lz77Time;
+
+    @Label("Encode Time")
+    @Timespan
+    long encodeTime;
+
+    @Label("I/O Time")
+    @Timespan
+    long ioTime;
+
+    @Label("Code Tables")
+    @DataAmount
+    long tableBytes;
+
+    void set(EntryMetrics metrics) {
+        path = metrics.getPath();
+        method = metrics.getMethod().name();
+        bytesIn = metrics.getBytesIn();
+        bytesOut = metrics.getBytesOut();
+
+        CodingStats coding = metrics.getCoding();
+        if (coding == null) return;
+        histogramTime = coding.nanos(Phase.HISTOGRAM);
+        treeTime = coding.nanos(Phase.TREE);
+        lz77Time = coding.nanos(Phase.LZ77);
+        encodeTime = coding.nanos(Phase.ENCODE);
+        ioTime = coding.nanos(Phase.IO);
+        tableBytes = coding.tableBytes();
+    }
+}
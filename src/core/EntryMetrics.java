@@ -0,0 +1,77 @@
+package core;
+
+import huffman.CodingStats;
+
+/**
+ * How one file went into an archive: how it was written, its bytes before
+ * and after, and where the time went.
+ *
+ * @author Dev1Art
+ * @project HuffCompressor
+ */
+public final class EntryMetrics {
+
+    public enum Method {
+        EMPTY,          // no data to write
+        HUFFMAN,        // coded with tables of its own
+        LZ77,           // coded with tables of its own after LZ77
+        DICTIONARY,     // coded with a table of the dictionary
+        STORED,         // copied as is
+        SOLID,          // packed into a solid block with other small files
+        DUPLICATE,      // refers to the data of an earlier file of the same content
+        UNCHANGED       // data copied from the archive being updated
+    }
+
+    private final String path;
+    private final Method method;
+    private final long bytesIn;
+    private final long bytesOut;
+    private final long nanos;
+    private final CodingStats coding;
+
+    EntryMetrics(String path, Method method, long bytesIn, long bytesOut, long nanos, CodingStats coding) {
+        this.path     = path;
+        this.method   = method;
+        this.bytesIn  = bytesIn;
+        this.bytesOut = bytesOut;
+        this.nanos    = nanos;
+        this.coding   = coding;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    // bytes of the file
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    // bytes the entry added to the archive, a share of the block for solid entries, 0 for shared data
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    // compressed size relative to the original, 1 for an empty file
+    public double getRatio() {
+        return (bytesIn == 0) ? 1 : (double) bytesOut / bytesIn;
+    }
+
+    // time from starting the entry until its data was in the archive, on the writing thread
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * Time of every coding phase and the size of the code tables, summed over
+     * the threads that coded the entry's blocks; null if the entry was not coded
+     * on its own, because it was stored, shared or packed into a solid block.
+     */
+    public CodingStats getCoding() {
+        return coding;
+    }
+}
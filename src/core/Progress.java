@@ -0,0 +1,44 @@
+package core;
+
+import huffman.CodingStats;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bytes of files a {@link Compressor} job has processed so far, out of all
+ * it has to, for showing progress while the job runs. Counts are added by
+ * the threads doing the work, a block at a time for large files, and may be
+ * read from any thread.
+ *
+ * <p>A job is cancelled by interrupting the thread running it; it stops at
+ * the next entry or block with a {@link java.util.concurrent.CancellationException}.
+ *
+ * @author Dev1Art
+ * @project HuffCompressor
+ */
+public final class Progress {
+
+    private final AtomicLong bytes = new AtomicLong();
+    private volatile long total = -1;
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    // bytes the job has to process, -1 until it knows
+    public long getTotal() {
+        return total;
+    }
+
+    void add(long bytes) {
+        this.bytes.addAndGet(bytes);
+    }
+
+    void setTotal(long total) {
+        this.total = total;
+    }
+
+    // stats of coding that count their bytes here as they go
+    CodingStats stats() {
+        return new CodingStats(this::add);
+    }
+}
@@ -0,0 +1,86 @@
+package core;
+
+import huffman.Segment;
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compresses the files of a directory ahead of the thread writing the archive.
+ *
+ * <p>Files are handed out in the order they were listed, which is the order the
+ * archive is written in, so the output does not depend on the number of workers.
+ * New files are only started while the files already in flight stay under the
+ * pending bytes bound.
+ *
+ * @author Dev1Art
+ * @project HuffCompressor
+ */
+final class SegmentPipeline implements AutoCloseable {
+
+    private final List<File> files;
+    private final long[] lengths;
+    private final ExecutorService executor;
+    private final CompressionOptions options;
+    private final long maxPendingBytes;
+    private final ArrayDeque<Future<Segment>> inFlight = new ArrayDeque<>();
+    private int submitted;      // files handed to the executor
+    private int taken;          // files written to the archive
+    private long pendingBytes;  // size of the files in flight
+
+    SegmentPipeline(List<File> files, CompressionOptions options) {
+        this.files = files;
+        this.lengths = new long[files.size()];
+        for (int i = 0; i < lengths.length; ++i) lengths[i] = files.get(i).length();
+        this.executor = Executors.newFixedThreadPool(options.getWorkers());
+        this.options = options;
+        this.maxPendingBytes = options.getMaxPendingBytes();
+    }
+
+    // whether the file is compressed by the pipeline, and has to be taken from it
+    boolean isNext(File file) {
+        return taken < files.size() && files.get(taken).equals(file);
+    }
+
+    // the compressed next file, null if it is to be stored raw; must be called in list order
+    Segment take() {
+        submitAhead();
+        try {
+            Segment segment = inFlight.remove().get();
+            pendingBytes -= lengths[taken++];
+            submitAhead();
+            return segment;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while compressing");
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    // start as many files as the bound allows, at least one so a large file can't stall
+    private void submitAhead() {
+        while (submitted < files.size()) {
+            File file = files.get(submitted);
+            long length = lengths[submitted];
+            if (!inFlight.isEmpty() && pendingBytes + length > maxPendingBytes) return;
+
+            inFlight.add(executor.submit(() -> Compressor.compressSegment(file, options)));
+            pendingBytes += length;
+            ++submitted;
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
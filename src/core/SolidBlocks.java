@@ -0,0 +1,149 @@
+package core;
+
+import huffman.CodingStats;
+import huffman.Huffman;
+import huffman.Segment;
+import io.InStream;
+import io.OutStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Packs small files into shared blocks, compressed as one piece of data.
+ *
+ * <p>Files are ordered by extension, so files of one kind share their code
+ * tables, and packed one after another until a block is full. Every file's
+ * entry points at its block and records where in the decompressed block the
+ * file starts. A block is decompressed once for all files extracted from it.
+ *
+ * @author Dev1Art
+ * @project HuffCompressor
+ */
+final class SolidBlocks {
+
+    // bytes of small files packed into one block
+    private static final long BLOCK_SIZE = 1 << 20;
+
+    // can't be instancing
+    private SolidBlocks() {}
+
+    /**
+     * Writes the files, mapped to their paths, as solid blocks, compressed by
+     * the option's workers, and returns the entry of every file. The coding
+     * of all blocks adds to {@code stats}.
+     */
+    static Map<File, Entry> write(Map<File, String> files, Map<File, Long> lengths,
+                                  OutStream binaryOut, CompressionOptions options, CodingStats stats) {
+        List<File> sorted = new ArrayList<>(files.keySet());
+        sorted.sort(Comparator.comparing(SolidBlocks::extension));
+
+        // cut the files into blocks
+        List<List<File>> blocks = new ArrayList<>();
+        List<File> block = new ArrayList<>();
+        long blockLength = 0;
+        for (File file : sorted) {
+            long length = lengths.get(file);
+            if (!block.isEmpty() && blockLength + length > BLOCK_SIZE) {
+                blocks.add(block);
+                block = new ArrayList<>();
+                blockLength = 0;
+            }
+            block.add(file);
+            blockLength += length;
+        }
+        if (!block.isEmpty()) blocks.add(block);
+
+        int flags = Entry.SOLID | ((options.getLzWindow() > 0) ? Entry.LZ77 : 0);
+        Map<File, Entry> entries = new HashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(options.getWorkers());
+        try {
+            // blocks are compressed ahead, a few per worker, and written in order
+            ArrayDeque<Future<Segment>> pending = new ArrayDeque<>();
+            int next = 0;
+            for (List<File> members : blocks) {
+                while (next < blocks.size() && pending.size() < 2 * options.getWorkers()) {
+                    List<File> ahead = blocks.get(next++);
+                    pending.add(executor.submit(() -> compress(ahead, lengths, options, stats)));
+                }
+
+                long offset = binaryOut.position();
+                Huffman.write(pending.remove().get(), binaryOut);
+                long storedLength = binaryOut.position() - offset;
+
+                long solidOffset = 0;
+                for (File file : members) {
+                    long length = lengths.get(file);
+                    entries.put(file, new Entry(files.get(file), flags, offset, length, storedLength, solidOffset));
+                    solidOffset += length;
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while compressing", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        return entries;
+    }
+
+    // read the files of a block one after another, right into the block, and compress them together
+    private static Segment compress(List<File> members, Map<File, Long> lengths, CompressionOptions options,
+                                    CodingStats stats) {
+        long length = 0;
+        for (File file : members) length += lengths.get(file);
+
+        byte[] data = new byte[Math.toIntExact(length)];
+        int position = 0;
+        for (File file : members) {
+            int fileLength = (int) (long) lengths.get(file);
+            try (FileInputStream in = new FileInputStream(file)) {
+                if (in.readNBytes(data, position, fileLength) != fileLength || in.read() != -1)
+                    throw new IllegalStateException("File changed while compressing: " + file);
+            }
+            catch (IOException e) {
+                throw new RuntimeException("Failed to read: " + file, e);
+            }
+            position += fileLength;
+        }
+        return Huffman.compressSegment(data, options.getTables(), options.getLzWindow(), stats);
+    }
+
+    // decompress the block the entries share and write every entry's file out of it
+    static void extract(File archive, int version, List<Entry> entries, File target) {
+        Entry first = entries.get(0);
+        InStream binaryIn = new InStream(archive, first.getOffset(), first.getStoredLength());
+        byte[] data = Huffman.decompress(binaryIn, version, first.isLz77());
+        binaryIn.close();
+
+        for (Entry entry : entries) {
+            if (entry.getSolidOffset() + entry.getLength() > data.length)
+                throw new RuntimeException("Corrupted solid entry: " + entry.getPath());
+            OutStream binaryOut = new OutStream(new File(target, entry.getPath()));
+            binaryOut.write(data, (int) entry.getSolidOffset(), (int) entry.getLength());
+            binaryOut.close();
+        }
+    }
+
+    private static String extension(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return (dot <= 0) ? "" : name.substring(dot + 1);
+    }
+}
@@ -12,11 +12,32 @@ import java.util.HashSet;
 
         // compressing
         public final static String HUFF_SUFFIX = ".huff";
+        public final static String ARCHIVE_NAME = "compressed" + HUFF_SUFFIX; // archive written into a chosen directory
         public final static boolean FILE_BIT = true; // bit marks the case when it is a file
         public final static boolean DIR_BIT = false; // bit marks the case when it is a dir
         public final static boolean EMPTY_BIT = true; // bit marks empty directory
         public final static boolean NON_EMPTY_BIT = false; // bit marks non-empty directory
 
+        // archive format
+        public final static int HUFF_MAGIC = 0x485546; // "HUF", never the first bits of a legacy archive
+        public final static int LEGACY_FORMAT = 0; // serialized trie per file, no archive header
+        public final static int CANONICAL_FORMAT = 1; // length-limited canonical codes, code lengths per file
+        public final static int BLOCK_FORMAT = 2; // files split into blocks, each with its own code lengths
+        public final static int INDEXED_FORMAT = 3; // byte-aligned entries, central directory at the end
+        public final static int LONG_FORMAT = 4; // variable-length 64-bit lengths, counts and offsets
+        public final static int STORED_FORMAT = 5; // entries may be stored raw
+        public final static int MULTI_TABLE_FORMAT = 6; // blocks may have several code tables, chosen per group of bytes
+        public final static int TIMED_FORMAT = 7; // entries record the modification time of their file
+        public final static int FORMAT_VERSION = TIMED_FORMAT; // version written by the compressor
+
+        // stream format
+        public final static int STREAM_MAGIC = 0x485553; // "HUS", one-pass stream of adaptively coded chunks
+        public final static int STREAM_VERSION = 1; // version written by the stream compressor
+
+        // dictionary format
+        public final static int DICTIONARY_MAGIC = 0x485544; // "HUD", code tables trained per type of file
+        public final static int DICTIONARY_VERSION = 1; // version written by the dictionary
+
         public final static HashSet<String> IGNORE_SET = new HashSet<>(); // directory of files which should be ignored
 
         static {
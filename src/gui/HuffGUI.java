@@ -1,7 +1,9 @@
 package gui;
 
 import com.formdev.flatlaf.themes.FlatMacDarkLaf;
+import core.CompressionOptions;
 import core.Compressor;
+import core.Progress;
 import data.Constants;
 import io.OutStream;
 import javax.swing.*;
@@ -9,9 +11,10 @@ import java.awt.*;
 import java.awt.event.*;
 import java.io.File;
 import java.text.DecimalFormat;
-import java.util.List;
-import java.util.NoSuchElementException;
-import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -30,6 +33,10 @@ public class HuffGUI extends JFrame {
     private JButton exitButton;
     private File packToCompress;
     private File saveTo;
+    private final Object jobLock = new Object();
+    private Thread jobThread;                   // running a job, null if none runs
+    private volatile boolean cancelRequested;
+    private static final int PROGRESS_INTERVAL = 200;   // ms between progress bar updates
     private static final Logger LOGGER = Logger.getLogger(HuffGUI.class.getName());
 
     public HuffGUI() {
@@ -169,32 +176,33 @@ public class HuffGUI extends JFrame {
         packToCompress = new File(dirPathField.getText());
         // request for directory to save, where will be created file compressed.huff
         invokeChooser("Select a Directory to save compressed data");
+        if (dirPathField.getText().isEmpty()) return;
         // sets up directory for saving
-        saveTo = new File(dirPathField.getText() + "\\compressed.huff");
-        OutStream out = new OutStream(saveTo);
-        // perform compression
-        try {
-            // compression time
+        saveTo = new File(dirPathField.getText(), Constants.ARCHIVE_NAME);
+        Progress progress = new Progress();
+        outputArea.setText("Compressing " + packToCompress + " ...");
+        // perform compression off the event thread
+        runJob(progress, () -> {
             long startTime = System.currentTimeMillis();
-            Compressor.compress(packToCompress, out);
-            long endTime = System.currentTimeMillis();
-            long time = endTime - startTime;
-            // simple progress bar filler
-            createProgressBarWorker().execute();
+            OutStream out = new OutStream(saveTo);
+            boolean complete = false;
+            try {
+                Compressor.compress(packToCompress, out, new CompressionOptions().setProgress(progress));
+                complete = true;
+            } finally {
+                out.close();
+                // no half written archive is left behind
+                if (!complete) saveTo.delete();
+            }
+            long time = System.currentTimeMillis() - startTime;
             // success compression
-            outputArea.setText("Compression successfully completed!");
-            outputArea.append("\n" + "Compressed to: " + dirPathField.getText());
-            outputArea.append("\n" + "Elapsed time: " + time + Constants.TIME_UNIT);
-            outputArea.append("\n" + "Compression ratio: " + ratio());
-            outputArea.setFont(Constants.FONT);
-
-        } catch (Exception ex) {
-            // errors handling
-            outputArea.setText("Error during compression!");
-            outputArea.append("\n" + "Nothing to compress or no directory for saving data.");
-            outputArea.setFont(Constants.FONT);
-            LOGGER.log(Level.WARNING, ex.getMessage());
-        }
+            return "Compression successfully completed!"
+                    + "\n" + "Compressed to: " + saveTo.getParent()
+                    + "\n" + "Elapsed time: " + time + Constants.TIME_UNIT
+                    + "\n" + "Throughput: " + throughput(getDirLength(packToCompress), time)
+                    + "\n" + "Compression ratio: " + ratio();
+        }, "Error during compression!" + "\n" + "Nothing to compress or no directory for saving data.",
+                () -> "The partial archive " + saveTo + " was removed.");
     }
 
     private void handleDecompressionAction() {
@@ -206,32 +214,134 @@ public class HuffGUI extends JFrame {
             return;
         }
         // sets up file to decompress with .huff format
-        File compressedFile = new File(dirPathField.getText() + "\\compressed.huff");
+        File compressedFile = new File(dirPathField.getText(), Constants.ARCHIVE_NAME);
+        String target = dirPathField.getText();
+        Progress progress = new Progress();
         outputArea.setText("Compressed file size: " + compressedFile.length() + " byte");
-        outputArea.setFont(Constants.FONT);
-        // perform decompression
-        try {
-            Compressor.decompress(compressedFile);
-            // simple progress bar filler
-            createProgressBarWorker().execute();
-        } catch (NoSuchElementException ex) {
-            // InStream throws exception for the last character if N = 8
-            // This catch block gets rid of that. Will be fixed.
-            outputArea.append("\n" + "Successfully decompressed.");
-            outputArea.append("\n" + "Decompressed to: " + dirPathField.getText());
-            outputArea.setFont(Constants.FONT);
-        } catch (Exception ex) {
-            // errors handling
-            outputArea.append("\n" + "Error during decompression: " + ex.getMessage());
-            outputArea.setFont(Constants.FONT);
-            LOGGER.log(Level.WARNING, ex.getMessage());
-        }
+        // perform decompression off the event thread
+        runJob(progress, () -> {
+            long startTime = System.currentTimeMillis();
+            Compressor.decompress(compressedFile, progress);
+            long time = System.currentTimeMillis() - startTime;
+            return "Compressed file size: " + compressedFile.length() + " byte"
+                    + "\n" + "Successfully decompressed."
+                    + "\n" + "Decompressed to: " + target
+                    + "\n" + "Elapsed time: " + time + Constants.TIME_UNIT
+                    + ((progress.getTotal() > 0) ? "\n" + "Throughput: " + throughput(progress.getBytes(), time) : "");
+        }, "Error during decompression!",
+                // archives with a central directory know their size once listed and remove what they extracted
+                () -> (progress.getTotal() >= 0)
+                        ? "Files extracted so far were removed from " + target + "."
+                        : "Nothing was extracted, except from archives of old formats, whose files"
+                        + "\n" + "written before the failure remain in " + target + ".");
     }
 
     private void handleExitAction() {
+        // while a job runs the button cancels it instead
+        if (cancelJob()) return;
         System.exit(0);
     }
 
+    /**
+     * Runs the job on a background thread, showing its progress until it ends,
+     * then the text it returns. Compress and decompress are disabled meanwhile
+     * and the exit button cancels the job by interrupting its thread; the job
+     * itself removes what it wrote before it gives up, as told by {@code cleanup}.
+     */
+    private void runJob(Progress progress, Callable<String> job, String errorText, Supplier<String> cleanup) {
+        setRunning(true);
+        cancelRequested = false;
+        outputArea.setFont(Constants.FONT);
+        long startTime = System.nanoTime();
+        Timer timer = new Timer(PROGRESS_INTERVAL, event -> showProgress(progress, startTime));
+        timer.start();
+
+        new SwingWorker<String, Void>() {
+            @Override
+            protected String doInBackground() throws Exception {
+                synchronized (jobLock) {
+                    jobThread = Thread.currentThread();
+                }
+                try {
+                    return job.call();
+                } finally {
+                    synchronized (jobLock) {
+                        jobThread = null;
+                        // the worker thread is pooled, an interrupt that came late must not reach the next job
+                        Thread.interrupted();
+                    }
+                }
+            }
+            @Override
+            protected void done() {
+                timer.stop();
+                setRunning(false);
+                try {
+                    outputArea.setText(get());
+                    progressBar.setValue(100);
+                    progressBar.setString("100%");
+                } catch (ExecutionException ex) {
+                    progressBar.setValue(0);
+                    if (cancelRequested || ex.getCause() instanceof CancellationException) {
+                        outputArea.setText("Canceled." + "\n" + cleanup.get());
+                        progressBar.setString("Canceled");
+                    } else {
+                        // errors handling
+                        outputArea.setText(errorText + "\n" + ex.getCause().getMessage() + "\n" + cleanup.get());
+                        progressBar.setString("Failed");
+                        LOGGER.log(Level.WARNING, ex.getCause().getMessage(), ex.getCause());
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                outputArea.setFont(Constants.FONT);
+            }
+        }.execute();
+    }
+
+    // interrupt the running job, if any
+    private boolean cancelJob() {
+        synchronized (jobLock) {
+            if (jobThread == null) return false;
+            cancelRequested = true;
+            jobThread.interrupt();
+        }
+        exitButton.setEnabled(false);
+        progressBar.setString("Canceling...");
+        return true;
+    }
+
+    private void setRunning(boolean running) {
+        selectButton.setEnabled(!running);
+        compressButton.setEnabled(!running);
+        decompressButton.setEnabled(!running);
+        exitButton.setEnabled(true);
+        exitButton.setText(running ? "Cancel" : "Exit");
+        progressBar.setIndeterminate(false);
+        progressBar.setValue(0);
+        progressBar.setString(running ? "0%" : null);
+    }
+
+    // percent done, speed and time left so far
+    private void showProgress(Progress progress, long startTime) {
+        if (cancelRequested) return;
+        long total = progress.getTotal();
+        if (total < 0) {
+            // legacy archives and listing of the files don't tell how much there is
+            progressBar.setIndeterminate(true);
+            return;
+        }
+        progressBar.setIndeterminate(false);
+        long bytes = Math.min(progress.getBytes(), total);
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        double bytesPerSecond = bytes / seconds;
+        int percent = (total == 0) ? 100 : (int) (bytes * 100 / total);
+        String text = percent + "%  " + new DecimalFormat("0.0").format(bytesPerSecond / 1e6) + " MB/s";
+        if (bytes > 0) text += "  ETA " + Math.round((total - bytes) / bytesPerSecond) + " s";
+        progressBar.setValue(percent);
+        progressBar.setString(text);
+    }
+
     private void invokeChooser(String dialogTitle) {
         JFileChooser chooser = new JFileChooser();
         chooser.setCurrentDirectory(new File(System.getProperty("user.home")));
@@ -248,31 +358,6 @@ public class HuffGUI extends JFrame {
         }
     }
 
-    private SwingWorker<Void, Integer> createProgressBarWorker() {
-        return new SwingWorker<>() {
-            @Override
-            protected Void doInBackground() {
-                compressButton.setEnabled(false);
-                int totalFiles = Objects.requireNonNull(packToCompress.listFiles()).length;
-                for (int i = 0; i < totalFiles; i++) {
-                    publish((int) ((i + 1) * 100.0) / totalFiles);
-                }
-                return null;
-            }
-            @Override
-            protected void process(List<Integer> chunks) {
-                for (Integer value : chunks) {
-                    progressBar.setValue(value);
-                }
-            }
-            @Override
-            protected void done() {
-                JOptionPane.showMessageDialog(HuffGUI.this, "Compression Completed!");
-                compressButton.setEnabled(true);
-            }
-        };
-    }
-
     private long getDirLength(File file) {
         if(file.isFile()) {
             return file.length();
@@ -290,6 +375,11 @@ public class HuffGUI extends JFrame {
         }
     }
 
+    private static String throughput(long bytes, long millis) {
+        DecimalFormat df = new DecimalFormat("0.00");
+        return df.format(bytes / 1e3 / Math.max(millis, 1)) + " MB/s";
+    }
+
     private String ratio() {
         long newSize = saveTo.length();
         Double ratio = 100 - (((double) newSize / getDirLength(packToCompress)) * 100);
@@ -0,0 +1,54 @@
+package huffman;
+
+/**
+ * Code table of a one-pass stream, rebuilt after every chunk.
+ *
+ * <p>The encoder and the decoder update the model with the same chunks, so
+ * they keep the same table without it ever being written. Older chunks count
+ * half as much after each update, so the table follows changes in the data,
+ * and every byte keeps a code however rare it has been so far.
+ *
+ * @author Dev1Art
+ * @project HuffCompressor
+ */
+final class AdaptiveModel {
+
+    private final long[] counts;    // decayed byte counts of the chunks so far
+    private int[] lengths;          // code length of every byte
+    private int[] codes;            // canonical code of every byte
+    private DecodeTable table;      // decoder of the current code, built when first needed
+
+    // starts with a flat code, 8 bits for every byte
+    AdaptiveModel(int symbols) {
+        counts = new long[symbols];
+        rebuild();
+    }
+
+    int length(int symbol) {
+        return lengths[symbol];
+    }
+
+    int code(int symbol) {
+        return codes[symbol];
+    }
+
+    DecodeTable decodeTable() {
+        if (table == null) table = new DecodeTable(codes, lengths);
+        return table;
+    }
+
+    // take in the bytes of a chunk once it has been coded with the current table
+    void update(byte[] chunk, int len) {
+        for (int c = 0; c < counts.length; c++) counts[c] >>>= 1;
+        for (int i = 0; i < len; i++) ++counts[chunk[i] & 0xff];
+        rebuild();
+    }
+
+    private void rebuild() {
+        long[] freq = new long[counts.length];
+        for (int c = 0; c < counts.length; c++) freq[c] = counts[c] + 1;
+        lengths = CodeLengths.limitedLengths(freq, CodeLengths.MAX_LENGTH);
+        codes = CodeLengths.canonicalCodes(lengths);
+        table = null;
+    }
+}
@@ -0,0 +1,176 @@
+package huffman;
+
+import io.InStream;
+import io.OutStream;
+import java.util.Arrays;
+
+/**
+ * Length-limited canonical Huffman codes.
+ *
+ * <p>Code lengths are computed with the package-merge algorithm, which gives
+ * the optimal prefix code whose longest code does not exceed a given bound.
+ * Codes are then assigned canonically, so the lengths alone describe the code.
+ *
+ * @author Dev1Art
+ * @project HuffCompressor
+ */
+final class CodeLengths {
+
+    // longest code ever assigned
+    static final int MAX_LENGTH = 15;
+
+    // frequencies are scaled below this bound, so the sum of all of them fits a long
+    private static final long MAX_FREQ = 1L << 38;
+
+    // can't be instancing
+    private CodeLengths() {}
+
+    /**
+     * Returns the optimal code length of every symbol, none longer than
+     * {@code maxLength} bits. Symbols with a zero frequency get length 0.
+     */
+    static int[] limitedLengths(long[] freq, int maxLength) {
+        int[] lengths = new int[freq.length];
+
+        // frequencies share a long with the symbol, so very large counts are scaled down,
+        // a used symbol keeps a count of at least 1
+        int shift = 0;
+        for (long f : freq) {
+            while ((f >>> shift) >= MAX_FREQ) ++shift;
+        }
+
+        // symbols in use, ordered by frequency
+        long[] keys = new long[freq.length];
+        int n = 0;
+        for (int s = 0; s < freq.length; ++s) {
+            if (freq[s] > 0) keys[n++] = (Math.max(freq[s] >>> shift, 1) << 16) | s;
+        }
+        keys = Arrays.copyOf(keys, n);
+        Arrays.sort(keys);
+
+        // in case there is only one symbol with a nonzero frequency
+        if (n == 1) lengths[(int) (keys[0] & 0xffff)] = 1;
+        if (n <= 1) return lengths;
+        if (n > (1 << maxLength))
+            throw new IllegalArgumentException("Too many symbols for " + maxLength + "-bit codes");
+
+        // list of every level: items are leaves or packages of two items of the level below,
+        // leafOf holds the symbol of a leaf and -1 for a package
+        int[][] leafOf = new int[maxLength][];
+        long[] weights = new long[n];
+        leafOf[0] = new int[n];
+        for (int i = 0; i < n; ++i) {
+            weights[i] = keys[i] >>> 16;
+            leafOf[0][i] = (int) (keys[i] & 0xffff);
+        }
+
+        for (int level = 1; level < maxLength; ++level) {
+            int packages = weights.length / 2;
+            long[] merged = new long[n + packages];
+            leafOf[level] = new int[n + packages];
+
+            // merge leaves with the packages made of the level below
+            int leaf = 0, pkg = 0;
+            for (int i = 0; i < merged.length; ++i) {
+                long packageWeight = (pkg < packages) ? weights[2 * pkg] + weights[2 * pkg + 1] : Long.MAX_VALUE;
+                if (leaf < n && (keys[leaf] >>> 16) <= packageWeight) {
+                    merged[i] = keys[leaf] >>> 16;
+                    leafOf[level][i] = (int) (keys[leaf] & 0xffff);
+                    ++leaf;
+                } else {
+                    merged[i] = packageWeight;
+                    leafOf[level][i] = -1;
+                    ++pkg;
+                }
+            }
+            weights = merged;
+        }
+
+        // the first 2n-2 items of the top level make the code, every time a symbol
+        // is chosen on some level its code gets one bit longer
+        int chosen = 2 * n - 2;
+        for (int level = maxLength - 1; level >= 0; --level) {
+            int packages = 0;
+            for (int i = 0; i < chosen; ++i) {
+                if (leafOf[level][i] >= 0) ++lengths[leafOf[level][i]];
+                else ++packages;
+            }
+            chosen = 2 * packages;
+        }
+        return lengths;
+    }
+
+    // assign canonical codes: shorter codes first, equal lengths in symbol order
+    static int[] canonicalCodes(int[] lengths) {
+        int[] count = new int[MAX_LENGTH + 1];
+        for (int length : lengths) {
+            if (length > MAX_LENGTH) throw new IllegalArgumentException("Illegal code length = " + length);
+            ++count[length];
+        }
+        count[0] = 0;
+
+        int[] next = new int[MAX_LENGTH + 1];
+        int code = 0;
+        for (int length = 1; length <= MAX_LENGTH; ++length) {
+            code = (code + count[length - 1]) << 1;
+            next[length] = code;
+        }
+
+        int[] codes = new int[lengths.length];
+        for (int s = 0; s < lengths.length; ++s) {
+            if (lengths[s] > 0) codes[s] = next[lengths[s]]++;
+        }
+        return codes;
+    }
+
+    // write code lengths in 4 bits each, a 0 is followed by 4 bits counting more unused symbols
+    static void write(OutStream binaryOut, int[] lengths) {
+        int s = 0;
+        while (s < lengths.length) {
+            if (lengths[s] != 0) {
+                binaryOut.write((char) lengths[s], 4);
+                ++s;
+                continue;
+            }
+            int run = 1;
+            while (run < 16 && s + run < lengths.length && lengths[s + run] == 0) ++run;
+            binaryOut.write((char) 0, 4);
+            binaryOut.write((char) (run - 1), 4);
+            s += run;
+        }
+    }
+
+    // number of bits write() takes for the lengths
+    static int bits(int[] lengths) {
+        int bits = 0;
+        int s = 0;
+        while (s < lengths.length) {
+            if (lengths[s] != 0) {
+                bits += 4;
+                ++s;
+                continue;
+            }
+            int run = 1;
+            while (run < 16 && s + run < lengths.length && lengths[s + run] == 0) ++run;
+            bits += 8;
+            s += run;
+        }
+        return bits;
+    }
+
+    // read code lengths written by write()
+    static int[] read(InStream binaryIn, int symbols) {
+        int[] lengths = new int[symbols];
+        int s = 0;
+        while (s < symbols) {
+            int length = binaryIn.readBits(4);
+            if (length != 0) {
+                lengths[s++] = length;
+                continue;
+            }
+            s += binaryIn.readBits(4) + 1;
+        }
+        if (s != symbols) throw new IllegalStateException("Corrupted code length table");
+        return lengths;
+    }
+}
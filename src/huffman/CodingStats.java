@@ -0,0 +1,100 @@
+package huffman;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongConsumer;
+
+/**
+ * Where the time of coding some data went, phase by phase, with the number
+ * of blocks, the bytes taken in and the size of their code tables. Blocks
+ * coded in parallel add to the same stats, so every count is kept atomically.
+ *
+ * @author Dev1Art
+ * @project HuffCompressor
+ */
+public final class CodingStats {
+
+    public enum Phase {
+        HISTOGRAM,  // counting bytes
+        TREE,       // code lengths, canonical codes and table training
+        LZ77,       // finding repeated strings
+        ENCODE,     // writing codes
+        IO          // reading the source and writing coded blocks
+    }
+
+    private static final int BLOCKS = Phase.values().length;
+    private static final int BYTES = BLOCKS + 1;
+    private static final int TABLE_BITS = BYTES + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(TABLE_BITS + 1);
+    private final LongConsumer progress;    // told about bytes as they are taken in, null if nobody watches
+
+    public CodingStats() {
+        this(null);
+    }
+
+    /**
+     * Stats passing on the bytes taken in, a block at a time and possibly
+     * from several threads, as coding goes, for progress reports.
+     */
+    public CodingStats(LongConsumer progress) {
+        this.progress = progress;
+    }
+
+    public long nanos(Phase phase) {
+        return counts.get(phase.ordinal());
+    }
+
+    // time of all phases together, across all threads
+    public long nanos() {
+        long nanos = 0;
+        for (Phase phase : Phase.values()) nanos += nanos(phase);
+        return nanos;
+    }
+
+    public long blocks() {
+        return counts.get(BLOCKS);
+    }
+
+    // bytes of uncompressed data coded or decoded
+    public long bytes() {
+        return counts.get(BYTES);
+    }
+
+    // bytes the code tables of all blocks take
+    public long tableBytes() {
+        return (counts.get(TABLE_BITS) + 7) / 8;
+    }
+
+    // take in the counts of other stats
+    public void add(CodingStats other) {
+        add(other, true);
+    }
+
+    void add(CodingStats other, boolean withTables) {
+        for (int i = 0; i < TABLE_BITS; i++) counts.addAndGet(i, other.counts.get(i));
+        if (withTables) counts.addAndGet(TABLE_BITS, other.counts.get(TABLE_BITS));
+    }
+
+    void addBlock() {
+        counts.incrementAndGet(BLOCKS);
+    }
+
+    void addBytes(long bytes) {
+        counts.addAndGet(BYTES, bytes);
+        if (progress != null) progress.accept(bytes);
+    }
+
+    void addTableBits(long bits) {
+        counts.addAndGet(TABLE_BITS, bits);
+    }
+
+    /**
+     * Adds the time since {@code start} to the phase of the stats, if there
+     * are any, and returns the end of it, the start of the next phase.
+     */
+    static long lap(CodingStats stats, Phase phase, long start) {
+        long now = System.nanoTime();
+        if (stats != null) stats.counts.addAndGet(phase.ordinal(), now - start);
+        return now;
+    }
+}
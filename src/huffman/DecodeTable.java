@@ -0,0 +1,103 @@
+package huffman;
+
+import io.InStream;
+
+/**
+ * Two-level lookup table for decoding a prefix code several bits at a time.
+ *
+ * <p>The root table is indexed by the next {@code rootBits} bits of input. An
+ * entry either holds a symbol with the length of its code, or links to a
+ * second-level table which resolves the codes longer than the root index.
+ *
+ * @author Dev1Art
+ * @project HuffCompressor
+ */
+final class DecodeTable {
+
+    // bits resolved by the root table
+    static final int ROOT_BITS = 10;
+
+    // longest code the two tables can resolve together
+    static final int MAX_CODE_LENGTH = 20;
+
+    // entry layout: symbol in bits 0-7, code length in bits 8-15;
+    // a link sets bit 31, keeps the second-level width in bits 24-30
+    // and the offset of the second-level table in bits 0-23
+    private static final int LINK = 0x80000000;
+
+    private final int[] table;
+    private final int rootBits;
+
+    /**
+     * @param codes   code of every symbol, right-aligned
+     * @param lengths code length of every symbol, 0 for an unused symbol
+     */
+    DecodeTable(int[] codes, int[] lengths) {
+        int maxLength = 0;
+        for (int length : lengths) maxLength = Math.max(maxLength, length);
+        if (maxLength > MAX_CODE_LENGTH)
+            throw new IllegalArgumentException("Code length exceeds " + MAX_CODE_LENGTH + " bits");
+
+        rootBits = Math.min(Math.max(maxLength, 1), ROOT_BITS);
+
+        // width of the second-level table below every root prefix
+        int[] subBits = new int[1 << rootBits];
+        for (int s = 0; s < lengths.length; ++s) {
+            int extra = lengths[s] - rootBits;
+            if (extra > 0) {
+                int prefix = codes[s] >>> extra;
+                subBits[prefix] = Math.max(subBits[prefix], extra);
+            }
+        }
+
+        // lay the second-level tables out behind the root table
+        int size = 1 << rootBits;
+        int[] offsets = new int[1 << rootBits];
+        for (int prefix = 0; prefix < subBits.length; ++prefix) {
+            if (subBits[prefix] > 0) {
+                offsets[prefix] = size;
+                size += 1 << subBits[prefix];
+            }
+        }
+        table = new int[size];
+        for (int prefix = 0; prefix < subBits.length; ++prefix) {
+            if (subBits[prefix] > 0)
+                table[prefix] = LINK | (subBits[prefix] << 24) | offsets[prefix];
+        }
+
+        // every code fills all the slots it is a prefix of
+        for (int s = 0; s < lengths.length; ++s) {
+            int length = lengths[s];
+            if (length == 0) continue;
+
+            int extra = length - rootBits;
+            if (extra <= 0) {
+                fill(0, rootBits, codes[s], length, s);
+            } else {
+                int prefix = codes[s] >>> extra;
+                int code = codes[s] & ((1 << extra) - 1);
+                fill(offsets[prefix], subBits[prefix], code, extra, s);
+            }
+        }
+    }
+
+    private void fill(int offset, int bits, int code, int length, int symbol) {
+        int shift = bits - length;
+        int first = offset + (code << shift);
+        int entry = (length << 8) | symbol;
+        for (int i = 0; i < (1 << shift); ++i) {
+            table[first + i] = entry;
+        }
+    }
+
+    // reads one code from the input stream and returns its symbol
+    int decode(InStream in) {
+        int entry = table[in.peekBits(rootBits)];
+        if (entry < 0) {
+            in.skipBits(rootBits);
+            entry = table[(entry & 0xffffff) + in.peekBits((entry >>> 24) & 0x7f)];
+        }
+        in.skipBits((entry >>> 8) & 0xff);
+        return entry & 0xff;
+    }
+}
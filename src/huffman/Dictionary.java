@@ -0,0 +1,192 @@
+package huffman;
+
+import data.Constants;
+import io.InStream;
+import io.OutStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Code tables trained on a corpus, one per type of file, kept in a file of
+ * their own and shared by every archive compressed with them.
+ *
+ * <p>Small files of one type have nearly the same byte counts, so coding them
+ * with a table trained beforehand costs only its ID instead of a table per
+ * file. The ID of a table is a CRC32C of its code lengths, so an archive read
+ * with a dictionary that lacks its tables fails instead of decoding garbage.
+ * Codes and decode tables are built once per ID and cached for the life of
+ * the process, across dictionaries loaded again.
+ *
+ * @author Dev1Art
+ * @project HuffCompressor
+ */
+public final class Dictionary {
+
+    // alphabet size of extended ASCII
+    private static final int R = 256;
+
+    // largest file coded with a dictionary table, larger files pay for tables of their own
+    public static final long MAX_LENGTH = 1 << 16;
+
+    // bytes read from a file at a time
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    // tables built so far, by ID
+    private static final Map<Integer, Table> CACHE = new ConcurrentHashMap<>();
+
+    private final Map<String, Integer> ids;         // table of every type
+    private final Map<Integer, int[]> lengths;      // code lengths of every table
+
+    private Dictionary(Map<String, int[]> tables) {
+        Map<String, Integer> ids = new TreeMap<>();
+        Map<Integer, int[]> lengths = new HashMap<>();
+        tables.forEach((type, typeLengths) -> {
+            int id = id(typeLengths);
+            ids.put(type, id);
+            lengths.put(id, typeLengths);
+        });
+        this.ids = Collections.unmodifiableMap(ids);
+        this.lengths = lengths;
+    }
+
+    /**
+     * Trains a table for every type of file under the corpus directory, from
+     * the byte counts of all its files. Every byte gets a code, so files of
+     * the type can always be coded, however rare some of their bytes are.
+     */
+    public static Dictionary train(File corpus) {
+        Map<String, long[]> counts = new TreeMap<>();
+        try (Stream<Path> paths = Files.walk(corpus.toPath())) {
+            paths.filter(Files::isRegularFile).forEach(path -> {
+                String type = typeOf(path.getFileName().toString());
+                if (!type.isEmpty()) count(path.toFile(), counts.computeIfAbsent(type, k -> new long[R]));
+            });
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Failed to walk corpus: " + corpus, e);
+        }
+
+        Map<String, int[]> tables = new TreeMap<>();
+        counts.forEach((type, freq) -> {
+            for (int c = 0; c < R; c++) freq[c] += 1;
+            tables.put(type, CodeLengths.limitedLengths(freq, CodeLengths.MAX_LENGTH));
+        });
+        return new Dictionary(tables);
+    }
+
+    // read a dictionary written by save()
+    public static Dictionary load(File file) {
+        InStream binaryIn = new InStream(file);
+        try {
+            if (binaryIn.peekBits(24) != Constants.DICTIONARY_MAGIC)
+                throw new RuntimeException("Not a dictionary: " + file);
+            binaryIn.skipBits(24);
+            int version = binaryIn.readChar();
+            if (version > Constants.DICTIONARY_VERSION)
+                throw new RuntimeException("Unsupported dictionary version: " + version);
+
+            Map<String, int[]> tables = new TreeMap<>();
+            long count = binaryIn.readVarLong();
+            for (long t = 0; t < count; t++) {
+                byte[] type = new byte[(int) binaryIn.readVarLong()];
+                for (int i = 0; i < type.length; i++) type[i] = binaryIn.readByte();
+                tables.put(new String(type, StandardCharsets.UTF_8), CodeLengths.read(binaryIn, R));
+            }
+            return new Dictionary(tables);
+        }
+        finally {
+            binaryIn.close();
+        }
+    }
+
+    public void save(File file) {
+        OutStream binaryOut = new OutStream(file);
+        binaryOut.write((char) (Constants.DICTIONARY_MAGIC >>> 16));
+        binaryOut.write((char) ((Constants.DICTIONARY_MAGIC >>> 8) & 0xff));
+        binaryOut.write((char) (Constants.DICTIONARY_MAGIC & 0xff));
+        binaryOut.write((char) Constants.DICTIONARY_VERSION);
+
+        binaryOut.writeVarLong(ids.size());
+        ids.forEach((type, id) -> {
+            byte[] bytes = type.getBytes(StandardCharsets.UTF_8);
+            binaryOut.writeVarLong(bytes.length);
+            binaryOut.write(bytes);
+            CodeLengths.write(binaryOut, lengths.get(id));
+        });
+        binaryOut.close();
+    }
+
+    /**
+     * Returns the ID of the table for files of the given name, or null if
+     * the dictionary has none for their type.
+     */
+    public Integer tableId(String fileName) {
+        return ids.get(typeOf(fileName));
+    }
+
+    public boolean hasTable(int id) {
+        return lengths.containsKey(id);
+    }
+
+    // types with a table, in order
+    public Iterable<String> types() {
+        return ids.keySet();
+    }
+
+    // codes of the table, built once for every ID
+    Table table(int id) {
+        int[] tableLengths = lengths.get(id);
+        if (tableLengths == null) throw new IllegalStateException("No table " + Integer.toHexString(id) + " in dictionary");
+
+        Table table = CACHE.computeIfAbsent(id, k -> new Table(tableLengths));
+        // two tables of one ID are as unlikely as any CRC collision, but would decode garbage
+        return Arrays.equals(table.lengths, tableLengths) ? table : new Table(tableLengths);
+    }
+
+    // lower-case extension of the name, empty if it has none
+    private static String typeOf(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return (dot <= 0) ? "" : fileName.substring(dot + 1).toLowerCase();
+    }
+
+    private static void count(File file, long[] freq) {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        InStream binaryIn = new InStream(file);
+        int n;
+        while ((n = binaryIn.read(chunk, 0, chunk.length)) > 0) {
+            for (int i = 0; i < n; i++) ++freq[chunk[i] & 0xff];
+        }
+        binaryIn.close();
+    }
+
+    private static int id(int[] lengths) {
+        CRC32C crc = new CRC32C();
+        for (int length : lengths) crc.update(length);
+        return (int) crc.getValue();
+    }
+
+    // code and decode tables of one set of code lengths
+    static final class Table {
+        final int[] lengths;
+        final int[] codes;
+        final DecodeTable decodeTable;
+
+        private Table(int[] lengths) {
+            this.lengths = lengths;
+            this.codes = CodeLengths.canonicalCodes(lengths);
+            this.decodeTable = new DecodeTable(codes, lengths);
+        }
+    }
+}
@@ -1,8 +1,21 @@
 package huffman;
 
+import data.Constants;
+import huffman.CodingStats.Phase;
 import io.InStream;
 import io.OutStream;
-import java.util.PriorityQueue;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * @author DanielDFY, Dev1Art
@@ -11,103 +24,722 @@ import java.util.PriorityQueue;
 public class Huffman {
 
     // alphabet size of extended ASCII
-    private static final int R = 256;
+    static final int R = 256;
+
+    // bytes read from the source file or written to the target file at a time
+    static final int CHUNK_SIZE = 1 << 16;
+
+    // bytes in the first chunk of a stream, before its table has adapted
+    static final int FIRST_CHUNK_SIZE = 1 << 12;
+
+    // methods of a block of an LZ77 entry, following its raw length
+    private static final int PLAIN_BLOCK = 0;
+    private static final int LZ_BLOCK = 1;
+
+    // bytes of the source file sharing one code table
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    // windows of a file sampled to estimate its entropy, and their size
+    private static final int SAMPLE_WINDOWS = 4;
+    private static final int SAMPLE_WINDOW_SIZE = 1 << 14;
+
+    // pool encoding the blocks of a file
+    private static final ForkJoinPool POOL = ForkJoinPool.commonPool();
 
     // can't be instancing
     private Huffman() {}
 
-    public static void compress(InStream binaryIn, OutStream binaryOut) {
-        String data = binaryIn.readString();
-        char[] input = data.toCharArray();
+    /**
+     * Compresses the file as a sequence of blocks, each with its own code
+     * table and bit-stream. Blocks are encoded in parallel and written in
+     * file order; only a few blocks per worker are held in memory at a time.
+     * Returns the number of bytes compressed.
+     */
+    public static long compress(File file, OutStream binaryOut) {
+        return compress(file, binaryOut, null, 1, 0, null);
+    }
 
-        // tabulate frequency counts
-        int[] freq = new int[R];
-        for (char c : input) ++freq[c];
+    /**
+     * Like {@link #compress(File, OutStream)}, with two choices for the code
+     * tables. Given the counts of {@link #sample(File)}, every block is coded
+     * with one table built from them, right away instead of being counted
+     * first, unless that codes it larger than raw. Otherwise every block may get up to {@code tables} tables, each
+     * coding the groups of bytes it suits best. A nonzero {@code lzWindow}
+     * turns repeated strings of every block into LZ77 back references first,
+     * the sample is then not used; such files are read back with {@code lz} set.
+     * The time of every phase goes to {@code stats}, unless it is null.
+     */
+    public static long compress(File file, OutStream binaryOut, long[] sample, int tables, int lzWindow,
+                                CodingStats stats) {
+        long length = file.length();
+
+        // write number of bytes of the original uncompressed data
+        binaryOut.writeVarLong(length);
 
-        // build Huffman trie
-        Node root = buildTrie(freq);
+        // blocks start on a byte boundary, so they are copied rather than shifted
+        binaryOut.align();
 
-        // build code table
-        String[] st = new String[R];
-        buildCode(st, root, "");
+        compressBlocks(file, length, binaryOut, true, sampledLengths(sample, length, stats), tables, lzWindow, stats);
+        return length;
+    }
 
-        // write trie for decoder
-        writeTrie(binaryOut, root);
+    /**
+     * Compresses the file into memory, away from the archive stream. Writing
+     * the segment later gives the same bytes as {@link #compress(File, OutStream)}.
+     */
+    public static Segment compressSegment(File file) {
+        return compressSegment(file, null, 1, 0, null);
+    }
 
-        // write number of bytes of the original uncompressed data
-        binaryOut.write(input.length);
+    public static Segment compressSegment(File file, long[] sample, int tables, int lzWindow, CodingStats stats) {
+        long length = file.length();
+        if (length > Integer.MAX_VALUE / 2)
+            throw new IllegalArgumentException("File is too large to compress in memory: " + file);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutStream segmentOut = new OutStream(bytes);
+        compressBlocks(file, length, segmentOut, false, sampledLengths(sample, length, stats), tables, lzWindow, stats);
+        segmentOut.flush();
+        return new Segment(length, bytes.toByteArray(), stats);
+    }
 
-        // use Huffman code to encode input
-        for (char c : input) {
-            String code = st[c];
-            for (int j = 0; j < code.length(); j++) {
-                if (code.charAt(j) == '0') {
-                    binaryOut.write(false);
-                } else if (code.charAt(j) == '1') {
-                    binaryOut.write(true);
-                } else throw new IllegalStateException("Illegal state");
+    /**
+     * Compresses data already in memory, such as several small files packed
+     * together, into blocks like those of a file.
+     */
+    public static Segment compressSegment(byte[] data, int tables, int lzWindow) {
+        return compressSegment(data, tables, lzWindow, null);
+    }
+
+    public static Segment compressSegment(byte[] data, int tables, int lzWindow, CodingStats stats) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 2 + 64);
+        OutStream segmentOut = new OutStream(bytes);
+        for (int start = 0; start < data.length; start += BLOCK_SIZE) {
+            byte[] block = Arrays.copyOfRange(data, start, Math.min(start + BLOCK_SIZE, data.length));
+            if (Thread.currentThread().isInterrupted()) throw new CancellationException("Interrupted while compressing");
+            writeBlock(segmentOut, encodeBlock(block, null, tables, lzWindow, stats));
+            if (stats != null) {
+                stats.addBlock();
+                stats.addBytes(block.length);
             }
         }
+        segmentOut.flush();
+        return new Segment(data.length, bytes.toByteArray(), stats);
+    }
+
+    /**
+     * Codes a small file with a table of the dictionary instead of tables of
+     * its own, the table's ID written in their place.
+     */
+    public static Segment compressSegment(byte[] data, Dictionary dictionary, int tableId, CodingStats stats) {
+        long start = System.nanoTime();
+        Dictionary.Table table = dictionary.table(tableId);
+        start = CodingStats.lap(stats, Phase.TREE, start);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 2 + 16);
+        OutStream segmentOut = new OutStream(bytes);
+        segmentOut.write(tableId);
+        encode(data, 0, data.length, table.lengths, table.codes, segmentOut);
+        segmentOut.flush();
+        CodingStats.lap(stats, Phase.ENCODE, start);
+        if (stats != null) {
+            stats.addBlock();
+            stats.addBytes(data.length);
+        }
+        return new Segment(data.length, bytes.toByteArray(), stats);
+    }
+
+    public static void write(Segment segment, OutStream binaryOut) {
+        long start = System.nanoTime();
+        binaryOut.writeVarLong(segment.length());
+        binaryOut.align();
+        binaryOut.write(segment.bytes);
+        CodingStats.lap(segment.stats(), Phase.IO, start);
     }
 
-    private static Node buildTrie(int[] freq) {
-        // initialization
-        PriorityQueue<Node> pq = new PriorityQueue<>();
-        for (char i = 0; i < R; ++i) {
-            if (freq[i] > 0)
-                pq.add(new Node(i, freq[i], null, null));
+    // lengths are the code lengths shared by all blocks, or null to build up to tables of them per block
+    private static void compressBlocks(File file, long length, OutStream binaryOut, boolean parallel,
+                                       int[] lengths, int tables, int lzWindow, CodingStats stats) {
+        if (tables < 1 || tables > TableSet.MAX_TABLES) throw new IllegalArgumentException("Illegal number of tables = " + tables);
+        if (lzWindow > 0) lengths = null;
+        InStream binaryIn = new InStream(file);
+        ArrayDeque<ForkJoinTask<byte[]>> pending = new ArrayDeque<>();
+        int window = 2 * POOL.getParallelism();
+        long remaining = length;
+        while (remaining > 0) {
+            if (Thread.currentThread().isInterrupted()) {
+                binaryIn.close();
+                throw new CancellationException("Interrupted while compressing");
+            }
+            long start = System.nanoTime();
+            byte[] block = new byte[(int) Math.min(BLOCK_SIZE, remaining)];
+            if (readFully(binaryIn, block) != block.length) {
+                binaryIn.close();
+                throw new IllegalStateException("File changed while compressing: " + file);
+            }
+            CodingStats.lap(stats, Phase.IO, start);
+            remaining -= block.length;
+            if (stats != null) {
+                stats.addBlock();
+                stats.addBytes(block.length);
+            }
+
+            // a file of one block is not worth a task
+            if (!parallel || (pending.isEmpty() && remaining == 0)) {
+                writeBlock(binaryOut, encodeBlock(block, lengths, tables, lzWindow, stats), stats);
+                continue;
+            }
+
+            int[] shared = lengths;
+            pending.add(POOL.submit(() -> encodeBlock(block, shared, tables, lzWindow, stats)));
+            if (pending.size() >= window) writeBlock(binaryOut, pending.remove().join(), stats);
         }
+        binaryIn.close();
+
+        while (!pending.isEmpty()) writeBlock(binaryOut, pending.remove().join(), stats);
+    }
+
+    /**
+     * Counts the bytes of a few windows spread over the file, a single short
+     * read however large the file is. Small files are counted whole.
+     */
+    public static long[] sample(File file) {
+        long length = file.length();
+        long[] freq = new long[R];
 
-        // in case there is only one character with a nonzero frequency
-        if (pq.size() == 1) {
-            if (freq['\0'] == 0)
-                pq.add(new Node('\0', 0, null, null));
-            else
-                pq.add(new Node('\1', 0, null, null));
+        byte[] window = new byte[(int) Math.min(SAMPLE_WINDOW_SIZE, length)];
+        int windows = (length <= (long) SAMPLE_WINDOWS * SAMPLE_WINDOW_SIZE)
+                ? (int) ((length + SAMPLE_WINDOW_SIZE - 1) / SAMPLE_WINDOW_SIZE)
+                : SAMPLE_WINDOWS;
+        for (int i = 0; i < windows; i++) {
+            // windows at even steps from the start to the end of the file
+            long offset = (windows == 1) ? 0 : (length - window.length) * i / (windows - 1);
+            InStream binaryIn = new InStream(file, offset);
+            int n = readFully(binaryIn, window);
+            binaryIn.close();
+            for (int j = 0; j < n; j++) ++freq[window[j] & 0xff];
         }
+        return freq;
+    }
 
-        // merge two smallest trees
-        while (pq.size() > 1) {
-            Node left = pq.remove();
-            Node right = pq.remove();
-            Node parent = new Node('\0', left.freq + right.freq, left, right);
-            pq.add(parent);
+    // order-0 entropy of the counts in bits per byte, no Huffman code gets below it
+    public static double entropy(long[] freq) {
+        long total = 0;
+        for (long f : freq) total += f;
+
+        double entropy = 0;
+        for (long f : freq) {
+            if (f == 0) continue;
+            double p = (double) f / total;
+            entropy -= p * Math.log(p) / Math.log(2);
         }
+        return entropy;
+    }
 
-        return pq.remove();
+    // code lengths for the sampled counts, every symbol gets a code unless the sample is the whole file
+    private static int[] sampledLengths(long[] sample, long length, CodingStats stats) {
+        if (sample == null) return null;
+
+        long start = System.nanoTime();
+        long[] freq = sample.clone();
+        long total = 0;
+        for (long f : freq) total += f;
+        if (total < length) {
+            for (int c = 0; c < R; c++) ++freq[c];
+        }
+        int[] lengths = CodeLengths.limitedLengths(freq, CodeLengths.MAX_LENGTH);
+        CodingStats.lap(stats, Phase.TREE, start);
+        return lengths;
     }
 
-    // make a look-up table from symbols and their encodings
-    private static void buildCode(String[] st, Node x, String s) {
-        if (!x.isLeaf()) {
-            buildCode(st, x.left, s + '0');
-            buildCode(st, x.right, s + '1');
+    /**
+     * Encodes a block on its own: length, number of tables, code lengths of
+     * every table, table selectors if there are several tables, and codes,
+     * padded to a whole byte. Several tables are only kept when they take
+     * fewer bits than one.
+     */
+    private static byte[] encodeBlock(byte[] block, int[] lengths, int tables, int lzWindow, CodingStats stats) {
+        if (lzWindow > 0) {
+            // both ways of coding take time, only the tables of the one kept count
+            CodingStats plainStats = (stats != null) ? new CodingStats() : null;
+            CodingStats lzStats = (stats != null) ? new CodingStats() : null;
+
+            // the raw length, for placing the block, then the block coded one way or the other
+            byte[] plain = encodeBlock(block, null, tables, 0, plainStats);
+            long start = System.nanoTime();
+            byte[][] streams = Lz77.encode(block, lzWindow);
+            CodingStats.lap(lzStats, Phase.LZ77, start);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(plain.length + 16);
+            OutStream blockOut = new OutStream(bytes);
+            blockOut.write(block.length);
+            blockOut.write((char) LZ_BLOCK);
+            for (byte[] stream : streams) {
+                byte[] encoded = encodeBlock(stream, null, tables, 0, lzStats);
+                blockOut.write(encoded.length);
+                blockOut.write(encoded);
+            }
+            blockOut.flush();
+            boolean lz = bytes.size() < plain.length + 5;
+            if (stats != null) {
+                stats.add(plainStats, !lz);
+                stats.add(lzStats, lz);
+            }
+            if (lz) return bytes.toByteArray();
+
+            // no repeats worth it, keep the Huffman coded block
+            bytes.reset();
+            blockOut.write(block.length);
+            blockOut.write((char) PLAIN_BLOCK);
+            blockOut.write(plain);
+            blockOut.flush();
+            return bytes.toByteArray();
+        }
+
+        if (lengths != null) {
+            // a sampled table codes the block right away, with nothing to count or build,
+            // unless the block is so unlike the sample that it codes larger than raw
+            CodingStats sampledStats = (stats != null) ? new CodingStats() : null;
+            byte[] encoded = writeCodes(block, lengths, null, sampledStats, System.nanoTime());
+            boolean sampled = encoded.length <= block.length;
+            if (stats != null) stats.add(sampledStats, sampled);
+            if (sampled) return encoded;
+        }
+
+        TableSet set = null;
+        long start = System.nanoTime();
+
+        // tabulate frequency counts
+        long[] freq = new long[R];
+        for (byte b : block) ++freq[b & 0xff];
+        start = CodingStats.lap(stats, Phase.HISTOGRAM, start);
+
+        // build length-limited canonical code
+        lengths = CodeLengths.limitedLengths(freq, CodeLengths.MAX_LENGTH);
+
+        if (tables > 1 && block.length > TableSet.GROUP_SIZE) {
+            long bits = CodeLengths.bits(lengths);
+            for (int c = 0; c < R; c++) bits += freq[c] * lengths[c];
+            set = TableSet.train(block, R, tables);
+            if (set.lengths.length == 1 || set.bits(block) >= bits) set = null;
+        }
+        return writeCodes(block, lengths, set, stats, start);
+    }
+
+    // the block with its code lengths or table set, then its codes; start is when building the code began
+    private static byte[] writeCodes(byte[] block, int[] lengths, TableSet set, CodingStats stats, long start) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(block.length / 2 + R);
+        OutStream blockOut = new OutStream(bytes);
+        blockOut.write(block.length);
+
+        if (set == null) {
+            // write code lengths for decoder
+            blockOut.write((char) 1);
+            CodeLengths.write(blockOut, lengths);
+            if (stats != null) stats.addTableBits(CodeLengths.bits(lengths));
+            int[] codes = CodeLengths.canonicalCodes(lengths);
+            start = CodingStats.lap(stats, Phase.TREE, start);
+
+            // use Huffman code to encode input
+            encode(block, 0, block.length, lengths, codes, blockOut);
         } else {
-            st[x.ch] = s;
+            blockOut.write((char) set.lengths.length);
+            int[][] codes = new int[set.lengths.length][];
+            for (int t = 0; t < codes.length; t++) {
+                CodeLengths.write(blockOut, set.lengths[t]);
+                if (stats != null) stats.addTableBits(CodeLengths.bits(set.lengths[t]));
+                codes[t] = CodeLengths.canonicalCodes(set.lengths[t]);
+            }
+            set.writeSelectors(blockOut);
+            start = CodingStats.lap(stats, Phase.TREE, start);
+
+            for (int g = 0; g < set.selectors.length; g++) {
+                int t = set.selectors[g];
+                int from = g * TableSet.GROUP_SIZE;
+                encode(block, from, Math.min(from + TableSet.GROUP_SIZE, block.length), set.lengths[t], codes[t], blockOut);
+            }
         }
+        blockOut.flush();
+        CodingStats.lap(stats, Phase.ENCODE, start);
+        return bytes.toByteArray();
     }
 
-    // write trie to a file
-    private static void writeTrie(OutStream binaryOut, Node x) {
-        if (x.isLeaf()) {
-            binaryOut.write(true);
-            binaryOut.write(x.ch, 8);
+    private static void encode(byte[] block, int start, int end, int[] lengths, int[] codes, OutStream blockOut) {
+        for (int i = start; i < end; i++) {
+            int c = block[i] & 0xff;
+            // only a sampled table can miss a symbol, when the file changed after the sample
+            if (lengths[c] == 0) throw new IllegalStateException("No code for symbol " + c);
+            blockOut.writeBits(codes[c], lengths[c]);
+        }
+    }
+
+    private static void writeBlock(OutStream binaryOut, byte[] encoded) {
+        binaryOut.write(encoded.length);
+        binaryOut.write(encoded);
+    }
+
+    private static void writeBlock(OutStream binaryOut, byte[] encoded, CodingStats stats) {
+        long start = System.nanoTime();
+        writeBlock(binaryOut, encoded);
+        CodingStats.lap(stats, Phase.IO, start);
+    }
+
+    private static int readFully(InStream binaryIn, byte[] b) {
+        int count = 0;
+        while (count < b.length) {
+            int n = binaryIn.read(b, count, b.length - count);
+            if (n == -1) break;
+            count += n;
+        }
+        return count;
+    }
+
+    /**
+     * Compresses the input in one pass, as it arrives. Every chunk is coded
+     * with a table adapted to the chunks before it, and handed on as soon as
+     * the input stalls or a chunk is full, so memory stays at one chunk and
+     * output is never held back by input that has not arrived yet.
+     * Each chunk is its length, the length of its codes and the codes padded
+     * to a whole byte; an empty chunk ends the stream.
+     */
+    public static void compress(InputStream in, OutStream binaryOut) {
+        AdaptiveModel model = new AdaptiveModel(R);
+        byte[] chunk = new byte[CHUNK_SIZE];
+        try {
+            // chunks start small and double, so little is coded before the table adapts
+            int limit = FIRST_CHUNK_SIZE;
+            int len;
+            while ((len = readChunk(in, chunk, limit)) > 0) {
+                limit = Math.min(2 * limit, CHUNK_SIZE);
+                writeChunk(binaryOut, chunk, len, model);
+            }
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Error occurs while reading the stream", e);
+        }
+        binaryOut.writeVarLong(0);
+        binaryOut.flush();
+    }
+
+    // read until the chunk is full or no more input is ready, 0 at the end of the input
+    private static int readChunk(InputStream in, byte[] chunk, int limit) throws IOException {
+        int count = 0;
+        do {
+            int n = in.read(chunk, count, limit - count);
+            if (n == -1) break;
+            count += n;
+        } while (count < limit && in.available() > 0);
+        return count;
+    }
+
+    // code the chunk with the current table and hand it on, then adapt the table to it
+    static void writeChunk(OutStream binaryOut, byte[] chunk, int len, AdaptiveModel model) {
+        byte[] encoded = encodeChunk(chunk, len, model);
+        binaryOut.writeVarLong(len);
+        binaryOut.writeVarLong(encoded.length);
+        binaryOut.write(encoded);
+        binaryOut.flush();
+        model.update(chunk, len);
+    }
+
+    private static byte[] encodeChunk(byte[] chunk, int len, AdaptiveModel model) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(len);
+        OutStream chunkOut = new OutStream(bytes);
+        for (int i = 0; i < len; i++) {
+            int c = chunk[i] & 0xff;
+            chunkOut.writeBits(model.code(c), model.length(c));
+        }
+        chunkOut.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decompresses a stream written by {@link #compress(InputStream, OutStream)}.
+     * The codes of a chunk are read as a whole before decoding, so the decoder
+     * never waits for input past the chunk it is writing out.
+     */
+    public static void decompress(InStream binaryIn, OutputStream out) {
+        AdaptiveModel model = new AdaptiveModel(R);
+        byte[] chunk = new byte[CHUNK_SIZE];
+        try {
+            int len;
+            while ((len = readChunk(binaryIn, chunk, model)) > 0) {
+                out.write(chunk, 0, len);
+                out.flush();
+            }
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Error occurs while writing the stream", e);
+        }
+    }
+
+    /**
+     * Reads the next chunk of a stream into {@code chunk} and decodes it, then
+     * adapts the table to it. Returns its length, 0 at the end of the stream.
+     */
+    static int readChunk(InStream binaryIn, byte[] chunk, AdaptiveModel model) {
+        long len = binaryIn.readVarLong();
+        if (len == 0) return 0;
+        long encodedLength = binaryIn.readVarLong();
+        if (len > CHUNK_SIZE || len < 0 || encodedLength > 2 * CHUNK_SIZE || encodedLength < 0)
+            throw new IllegalStateException("Corrupted chunk length");
+
+        byte[] encoded = new byte[(int) encodedLength];
+        if (readFully(binaryIn, encoded) != encoded.length)
+            throw new NoSuchElementException("Reading from empty input stream");
+
+        InStream chunkIn = new InStream(new ByteArrayInputStream(encoded));
+        DecodeTable table = model.decodeTable();
+        for (int i = 0; i < len; i++) {
+            chunk[i] = (byte) table.decode(chunkIn);
+        }
+        model.update(chunk, (int) len);
+        return (int) len;
+    }
+
+    /**
+     * Decompresses one file into {@code file}. The output is opened once the
+     * uncompressed length is known, so large files are preallocated and mapped.
+     */
+    public static void decompress(InStream binaryIn, File file, int version) {
+        decompress(binaryIn, file, version, false);
+    }
+
+    // lz tells whether the file was compressed with an LZ77 window
+    public static void decompress(InStream binaryIn, File file, int version, boolean lz) {
+        decompress(binaryIn, file, version, lz, null);
+    }
+
+    /**
+     * Like {@link #decompress(InStream, File, int, boolean)}, counting the
+     * bytes of every block decoded into {@code stats}, unless it is null.
+     * Stops between blocks once the thread is interrupted.
+     */
+    public static void decompress(InStream binaryIn, File file, int version, boolean lz, CodingStats stats) {
+        if (version == Constants.LEGACY_FORMAT)
+            decompressLegacy(binaryIn, file);
+        else if (version == Constants.CANONICAL_FORMAT)
+            decompressCanonical(binaryIn, file);
+        else
+            decompressBlocks(binaryIn, file, version, lz, stats);
+    }
+
+    // decompress a file coded with a table of the dictionary by compressSegment(byte[], Dictionary, int)
+    public static void decompress(InStream binaryIn, File file, Dictionary dictionary) {
+        long length = binaryIn.readVarLong();
+        if (length > Dictionary.MAX_LENGTH) throw new IllegalStateException("Corrupted dictionary entry length");
+        binaryIn.align();
+        DecodeTable table = dictionary.table(binaryIn.readInt()).decodeTable;
+
+        OutStream binaryOut = new OutStream(file, length);
+        decompress(table, (int) length, binaryIn, binaryOut);
+        binaryOut.close();
+    }
+
+    // decompress data written from memory by compressSegment(byte[], int, int) back into memory
+    public static byte[] decompress(InStream binaryIn, int version, boolean lz) {
+        long length = binaryIn.readVarLong();
+        if (length > Integer.MAX_VALUE - 8) throw new IllegalStateException("Too large to decompress in memory");
+        binaryIn.align();
+
+        byte[] data = new byte[(int) length];
+        int position = 0;
+        while (position < length) {
+            byte[] block = decodeBlock(readBlock(binaryIn), version, lz);
+            if (block.length > length - position) throw new IllegalStateException("Corrupted block length");
+            System.arraycopy(block, 0, data, position, block.length);
+            position += block.length;
+        }
+        return data;
+    }
+
+    /**
+     * Blocks are read one after another, but decoded in parallel: the raw length
+     * at the start of every block gives its position in the output, where it is
+     * written as soon as it is decoded.
+     */
+    private static void decompressBlocks(InStream binaryIn, File file, int version, boolean lz, CodingStats stats) {
+        // number of bytes to write
+        long length = (version >= Constants.LONG_FORMAT) ? binaryIn.readVarLong() : binaryIn.readInt();
+        binaryIn.align();
+
+        // a file of one block is not worth a task
+        if (length <= BLOCK_SIZE) {
+            OutStream binaryOut = new OutStream(file);
+            try {
+                if (length > 0) binaryOut.write(decodeBlock(readBlock(binaryIn), version, lz));
+            }
+            catch (RuntimeException e) {
+                discard(binaryOut, file, e);
+                throw e;
+            }
+            binaryOut.close();
+            if (stats != null) stats.addBytes(length);
             return;
         }
-        binaryOut.write(false);
 
-        writeTrie(binaryOut, x.left);
-        writeTrie(binaryOut, x.right);
+        // blocks are only written at their positions, nothing to map
+        OutStream binaryOut = OutStream.positional(file, length);
+
+        ArrayDeque<ForkJoinTask<?>> pending = new ArrayDeque<>();
+        int window = 2 * POOL.getParallelism();
+        long position = 0;
+        try {
+            while (position < length) {
+                if (Thread.currentThread().isInterrupted())
+                    throw new CancellationException("Interrupted while decompressing");
+                byte[] encoded = readBlock(binaryIn);
+                long blockPosition = position;
+                position += rawLength(encoded);
+                if (position > length) throw new IllegalStateException("Corrupted block length");
+
+                pending.add(POOL.submit(() -> {
+                    byte[] block = decodeBlock(encoded, version, lz);
+                    binaryOut.writeAt(blockPosition, block, 0, block.length);
+                    if (stats != null) stats.addBytes(block.length);
+                }));
+                if (pending.size() >= window) pending.remove().join();
+            }
+            while (!pending.isEmpty()) pending.remove().join();
+        }
+        catch (RuntimeException e) {
+            // no task may write once the file is gone
+            for (ForkJoinTask<?> task : pending) task.quietlyJoin();
+            discard(binaryOut, file, e);
+            throw e;
+        }
+        binaryOut.close();
+    }
+
+    // close and remove the file a failed decompression was writing, nothing half written is left behind
+    private static void discard(OutStream binaryOut, File file, RuntimeException failure) {
+        try {
+            binaryOut.close();
+        }
+        catch (RuntimeException e) {
+            failure.addSuppressed(e);
+        }
+        file.delete();
+    }
+
+    private static byte[] readBlock(InStream binaryIn) {
+        byte[] encoded = new byte[binaryIn.readInt()];
+        if (readFully(binaryIn, encoded) != encoded.length)
+            throw new NoSuchElementException("Reading from empty input stream");
+        return encoded;
+    }
+
+    // number of bytes the encoded block decodes to, written ahead of its code lengths
+    private static int rawLength(byte[] encoded) {
+        if (encoded.length < 4) throw new IllegalStateException("Corrupted block length");
+        return ((encoded[0] & 0xff) << 24) | ((encoded[1] & 0xff) << 16)
+                | ((encoded[2] & 0xff) << 8) | (encoded[3] & 0xff);
+    }
+
+    private static byte[] decodeBlock(byte[] encoded, int version, boolean lz) {
+        if (!lz) return decodeBlock(new ByteArrayInputStream(encoded), version);
+
+        int method = (encoded.length > 4) ? encoded[4] : -1;
+        if (method == PLAIN_BLOCK) return decodeBlock(new ByteArrayInputStream(encoded, 5, encoded.length - 5), version);
+        if (method != LZ_BLOCK) throw new IllegalStateException("Corrupted block method");
+
+        byte[][] streams = new byte[Lz77.STREAMS][];
+        int offset = 5;
+        for (int s = 0; s < streams.length; s++) {
+            if (offset + 4 > encoded.length) throw new IllegalStateException("Corrupted block length");
+            int length = ((encoded[offset] & 0xff) << 24) | ((encoded[offset + 1] & 0xff) << 16)
+                    | ((encoded[offset + 2] & 0xff) << 8) | (encoded[offset + 3] & 0xff);
+            offset += 4;
+            if (length < 0 || offset + length > encoded.length) throw new IllegalStateException("Corrupted block length");
+            streams[s] = decodeBlock(new ByteArrayInputStream(encoded, offset, length), version);
+            offset += length;
+        }
+        return Lz77.decode(streams, rawLength(encoded));
+    }
+
+    private static byte[] decodeBlock(ByteArrayInputStream encoded, int version) {
+        InStream blockIn = new InStream(encoded);
+        byte[] block = new byte[blockIn.readInt()];
+
+        int tables = (version >= Constants.MULTI_TABLE_FORMAT) ? blockIn.readChar() : 1;
+        if (tables < 1 || tables > TableSet.MAX_TABLES) throw new IllegalStateException("Corrupted number of tables");
+
+        // read in code lengths from input stream
+        DecodeTable[] decodeTables = new DecodeTable[tables];
+        for (int t = 0; t < tables; t++) {
+            int[] lengths = CodeLengths.read(blockIn, R);
+            decodeTables[t] = new DecodeTable(CodeLengths.canonicalCodes(lengths), lengths);
+        }
+
+        if (tables == 1) {
+            DecodeTable table = decodeTables[0];
+            for (int i = 0; i < block.length; i++) {
+                block[i] = (byte) table.decode(blockIn);
+            }
+            return block;
+        }
+
+        byte[] selectors = TableSet.readSelectors(blockIn, TableSet.groups(block.length), tables);
+        for (int g = 0; g < selectors.length; g++) {
+            DecodeTable table = decodeTables[selectors[g]];
+            int end = Math.min((g + 1) * TableSet.GROUP_SIZE, block.length);
+            for (int i = g * TableSet.GROUP_SIZE; i < end; i++) {
+                block[i] = (byte) table.decode(blockIn);
+            }
+        }
+        return block;
     }
 
-    public static void decompress(InStream binaryIn, OutStream binaryOut) {
+    // decompress data written with a single code table for the whole file
+    private static void decompressCanonical(InStream binaryIn, File file) {
+        // read in code lengths from input stream
+        int[] lengths = CodeLengths.read(binaryIn, R);
+        DecodeTable table = new DecodeTable(CodeLengths.canonicalCodes(lengths), lengths);
+
+        // number of bytes to write
+        int length = binaryIn.readInt();
+
+        OutStream binaryOut = new OutStream(file, length);
+        decompress(table, length, binaryIn, binaryOut);
+        binaryOut.close();
+    }
+
+    // decompress data written with a serialized trie, before canonical codes
+    private static void decompressLegacy(InStream binaryIn, File file) {
         // read in Huffman trie from input stream
         Node root = readTrie(binaryIn);
 
         // number of bytes to write
         int length = binaryIn.readInt();
 
-        // decompress using the Huffman trie
+        // flatten the trie into a code table, unless it is too deep to fit one
+        OutStream binaryOut = new OutStream(file, length);
+        int[] codes = new int[R];
+        int[] lengths = new int[R];
+        if (root.isLeaf() || !collectCodes(root, 0, 0, codes, lengths)) {
+            decompressByTrie(root, length, binaryIn, binaryOut);
+        } else {
+            DecodeTable table = new DecodeTable(codes, lengths);
+            decompress(table, length, binaryIn, binaryOut);
+        }
+        binaryOut.close();
+    }
+
+    // decompress several bits at a time using the look-up table
+    private static void decompress(DecodeTable table, int length, InStream binaryIn, OutStream binaryOut) {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        int n = 0;
+        for (int i = 0; i < length; i++) {
+            chunk[n++] = (byte) table.decode(binaryIn);
+            if (n == CHUNK_SIZE) {
+                binaryOut.write(chunk, 0, n);
+                n = 0;
+            }
+        }
+        binaryOut.write(chunk, 0, n);
+    }
+
+    // decompress walking the Huffman trie one bit at a time
+    private static void decompressByTrie(Node root, int length, InStream binaryIn, OutStream binaryOut) {
         for (int i = 0; i < length; i++) {
             Node x = root;
             while (!x.isLeaf()) {
@@ -119,6 +751,19 @@ public class Huffman {
         }
     }
 
+    // make code and length tables from the trie, false if a code is too long for a table
+    private static boolean collectCodes(Node x, int code, int depth, int[] codes, int[] lengths) {
+        if (x.isLeaf()) {
+            codes[x.ch] = code;
+            lengths[x.ch] = depth;
+            return true;
+        }
+        if (depth == DecodeTable.MAX_CODE_LENGTH) return false;
+
+        return collectCodes(x.left, code << 1, depth + 1, codes, lengths)
+                && collectCodes(x.right, (code << 1) | 1, depth + 1, codes, lengths);
+    }
+
     // read trie from input stream
     private static Node readTrie(InStream in) {
         boolean isLeaf = in.readBoolean();
@@ -0,0 +1,115 @@
+package huffman;
+
+import data.Constants;
+import io.InStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.NoSuchElementException;
+import java.util.function.IntSupplier;
+
+/**
+ * An input stream decompressing data in the one-pass stream format, as
+ * written by {@link HuffmanOutputStream} or
+ * {@code Compressor.compress(InputStream, OutputStream)}.
+ *
+ * <p>Chunks are decoded one at a time as they are read, so the stream holds
+ * at most one chunk and its codes. Reading blocks only until the next whole
+ * chunk has arrived. The underlying stream is read ahead in blocks of its
+ * own, so bytes following the compressed data may be consumed with it.
+ *
+ * @author Dev1Art
+ * @project HuffCompressor
+ */
+public class HuffmanInputStream extends InputStream {
+
+    private final InStream binaryIn;
+    private final AdaptiveModel model = new AdaptiveModel(Huffman.R);
+    private final byte[] chunk = new byte[Huffman.CHUNK_SIZE];
+    private int position;       // next byte of the chunk to read
+    private int count;          // bytes decoded into the chunk
+    private boolean eof;
+    private boolean closed;
+
+    // reads the stream header, so a stream of another format fails right away
+    public HuffmanInputStream(InputStream in) throws IOException {
+        if (null == in)
+            throw new IllegalArgumentException("Null stream for decompress");
+
+        binaryIn = new InStream(in);
+        checked(() -> {
+            if (binaryIn.peekBits(24) != Constants.STREAM_MAGIC)
+                throw new IllegalStateException("Not a compressed stream");
+            binaryIn.skipBits(24);
+            int version = binaryIn.readChar();
+            if (version > Constants.STREAM_VERSION)
+                throw new IllegalStateException("Unsupported stream version: " + version);
+            return 0;
+        });
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) return -1;
+        return chunk[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if ((off | len | (b.length - off - len)) < 0) throw new IndexOutOfBoundsException();
+        if (len == 0) return 0;
+        if (!fill()) return -1;
+
+        int n = Math.min(len, count - position);
+        System.arraycopy(chunk, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    // bytes of the decoded chunk not read yet, more may follow without blocking or not
+    @Override
+    public int available() throws IOException {
+        ensureOpen();
+        return count - position;
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        binaryIn.close();
+    }
+
+    // decode the next chunk once the current one is read, false at the end of the stream
+    private boolean fill() throws IOException {
+        ensureOpen();
+        if (position < count) return true;
+        if (eof) return false;
+
+        count = checked(() -> Huffman.readChunk(binaryIn, chunk, model));
+        position = 0;
+        eof = (count == 0);
+        return !eof;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) throw new IOException("Stream closed");
+    }
+
+    // failures of the bit stream are unchecked, an input stream reports them as IOExceptions
+    private static int checked(IntSupplier read) throws IOException {
+        try {
+            return read.getAsInt();
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        catch (NoSuchElementException e) {
+            throw new EOFException("Unexpected end of compressed stream");
+        }
+        catch (IllegalStateException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+}
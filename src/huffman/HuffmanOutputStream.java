@@ -0,0 +1,121 @@
+package huffman;
+
+import data.Constants;
+import io.OutStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * An output stream compressing the data written to it, in the one-pass
+ * stream format of {@link Huffman#compress(java.io.InputStream, OutStream)},
+ * so it can be read back with {@link HuffmanInputStream} or
+ * {@code Compressor.decompress(InputStream, OutputStream)}.
+ *
+ * <p>Data is gathered into chunks, coded and handed on to the underlying
+ * stream whenever a chunk is full. Chunks start small and double up to 64 KiB,
+ * so the stream holds at most one chunk and its codes, however much data goes
+ * through. {@link #flush()} codes and writes out the data gathered so far, for
+ * a reader waiting on it; {@link #finish()} ends the compressed data without
+ * closing the underlying stream.
+ *
+ * @author Dev1Art
+ * @project HuffCompressor
+ */
+public class HuffmanOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private final OutStream binaryOut;
+    private final AdaptiveModel model = new AdaptiveModel(Huffman.R);
+    private final byte[] chunk = new byte[Huffman.CHUNK_SIZE];
+    private int count;                              // bytes in the chunk
+    private int limit = Huffman.FIRST_CHUNK_SIZE;   // bytes the chunk takes before it is coded
+    private boolean finished;
+
+    public HuffmanOutputStream(OutputStream out) {
+        if (null == out)
+            throw new IllegalArgumentException("Null stream for compress");
+
+        this.out = out;
+        this.binaryOut = new OutStream(out);
+        binaryOut.write((char) (Constants.STREAM_MAGIC >>> 16));
+        binaryOut.write((char) ((Constants.STREAM_MAGIC >>> 8) & 0xff));
+        binaryOut.write((char) (Constants.STREAM_MAGIC & 0xff));
+        binaryOut.write((char) Constants.STREAM_VERSION);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        chunk[count++] = (byte) b;
+        if (count == limit) writeChunk();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if ((off | len | (b.length - off - len)) < 0) throw new IndexOutOfBoundsException();
+
+        while (len > 0) {
+            int n = Math.min(len, limit - count);
+            System.arraycopy(b, off, chunk, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (count == limit) writeChunk();
+        }
+    }
+
+    // codes what has been written so far and hands it on, a reader gets it all
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        writeChunk();
+        unchecked(binaryOut::flush);
+    }
+
+    /**
+     * Writes the rest of the data and the end of the stream, leaving the
+     * underlying stream open, so more can follow the compressed data.
+     */
+    public void finish() throws IOException {
+        if (finished) return;
+        writeChunk();
+        unchecked(() -> {
+            binaryOut.writeVarLong(0);
+            binaryOut.flush();
+        });
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    private void writeChunk() throws IOException {
+        if (count == 0) return;
+        unchecked(() -> Huffman.writeChunk(binaryOut, chunk, count, model));
+        count = 0;
+        limit = Math.min(2 * limit, Huffman.CHUNK_SIZE);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (finished) throw new IOException("Stream finished");
+    }
+
+    // failures of the underlying stream come out of OutStream unchecked
+    private static void unchecked(Runnable write) throws IOException {
+        try {
+            write.run();
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package huffman;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * LZ77 stage in front of the Huffman coder, turning repeated strings of a
+ * block into back references.
+ *
+ * <p>The block becomes LZ4-style sequences: a token with the number of
+ * literals in its high four bits and the match length minus {@link #MIN_MATCH}
+ * in its low four bits, a value of 15 continuing in bytes of 255 and a final
+ * smaller byte, then the literals, then the match distance in two bytes. The
+ * last sequence has literals only. Tokens and length bytes, literals, and the
+ * low and high distance bytes are kept in four separate {@link #STREAMS}, so
+ * each is Huffman coded with code tables of its own.
+ *
+ * <p>Matches are found through hash chains over the window, following at most
+ * {@link #MAX_CHAIN} earlier positions per byte.
+ *
+ * @author Dev1Art
+ * @project HuffCompressor
+ */
+final class Lz77 {
+
+    // largest window, distances are written in two bytes
+    static final int MAX_WINDOW = 1 << 16;
+
+    // streams of a block: tokens and lengths, literals, low and high distance bytes
+    static final int STREAMS = 4;
+    private static final int LENGTHS = 0;
+    private static final int LITERALS = 1;
+    private static final int DISTANCE_LOW = 2;
+    private static final int DISTANCE_HIGH = 3;
+
+    // shortest match worth a back reference
+    private static final int MIN_MATCH = 4;
+
+    // distances from which a match has to be longer to pay for its two distance bytes
+    private static final int FAR_DISTANCE = 1 << 12;
+
+    // earlier positions tried for every match
+    private static final int MAX_CHAIN = 32;
+
+    private static final int HASH_BITS = 15;
+
+    // can't be instancing
+    private Lz77() {}
+
+    /**
+     * Returns the {@link #STREAMS} streams of the block's sequences.
+     *
+     * @param window largest distance of a match plus one, a power of two
+     *               up to {@link #MAX_WINDOW}
+     */
+    static byte[][] encode(byte[] block, int window) {
+        if (window < 2 || window > MAX_WINDOW || Integer.bitCount(window) != 1)
+            throw new IllegalArgumentException("Illegal window size = " + window);
+
+        ByteArrayOutputStream[] out = new ByteArrayOutputStream[STREAMS];
+        for (int s = 0; s < STREAMS; s++) out[s] = new ByteArrayOutputStream(block.length / 8 + 16);
+        int[] head = new int[1 << HASH_BITS];   // last position of every hash, -1 if none
+        int[] prev = new int[window];           // position before with the same hash
+        Arrays.fill(head, -1);
+
+        int literals = 0;   // start of the literals not written yet
+        int i = 0;
+        while (i + MIN_MATCH <= block.length) {
+            int hash = hash(block, i);
+
+            // longest match among the positions with the same hash, far ones counting a byte less
+            int bestLength = 0;
+            int bestDistance = 0;
+            int bestScore = 0;
+            int candidate = head[hash];
+            for (int chain = 0; chain < MAX_CHAIN && candidate >= 0 && i - candidate < window; chain++) {
+                int length = matchLength(block, candidate, i);
+                int score = (i - candidate >= FAR_DISTANCE) ? length - 1 : length;
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestLength = length;
+                    bestDistance = i - candidate;
+                }
+                int next = prev[candidate & (window - 1)];
+                if (next >= candidate) break;
+                candidate = next;
+            }
+
+            if (bestScore < MIN_MATCH) {
+                insert(block, i, head, prev, window);
+                i++;
+                continue;
+            }
+
+            writeSequence(out, block, literals, i - literals, bestLength, bestDistance);
+            for (int end = i + bestLength; i < end; i++) {
+                if (i + MIN_MATCH <= block.length) insert(block, i, head, prev, window);
+            }
+            literals = i;
+        }
+
+        // the rest of the block, literals only
+        writeSequence(out, block, literals, block.length - literals, 0, 0);
+
+        byte[][] streams = new byte[STREAMS][];
+        for (int s = 0; s < STREAMS; s++) streams[s] = out[s].toByteArray();
+        return streams;
+    }
+
+    // restore the block of the given length from the streams of its sequences
+    static byte[] decode(byte[][] streams, int length) {
+        byte[] block = new byte[length];
+        byte[] lengths = streams[LENGTHS];
+        byte[] literalBytes = streams[LITERALS];
+        int[] in = new int[STREAMS];
+        int out = 0;
+        try {
+            while (true) {
+                int token = lengths[in[LENGTHS]++] & 0xff;
+
+                int literals = token >>> 4;
+                if (literals == 15) {
+                    int b;
+                    do {
+                        b = lengths[in[LENGTHS]++] & 0xff;
+                        literals += b;
+                    } while (b == 255);
+                }
+                System.arraycopy(literalBytes, in[LITERALS], block, out, literals);
+                in[LITERALS] += literals;
+                out += literals;
+                if (out == length) break;
+
+                int matchLength = token & 0x0f;
+                if (matchLength == 15) {
+                    int b;
+                    do {
+                        b = lengths[in[LENGTHS]++] & 0xff;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+                int distance = (streams[DISTANCE_LOW][in[DISTANCE_LOW]++] & 0xff)
+                        | ((streams[DISTANCE_HIGH][in[DISTANCE_HIGH]++] & 0xff) << 8);
+                if (distance == 0 || distance > out || out + matchLength > length)
+                    throw new IllegalStateException("Corrupted match");
+
+                // overlapping matches repeat the bytes just written, so copy one at a time
+                for (int end = out + matchLength; out < end; out++) {
+                    block[out] = block[out - distance];
+                }
+            }
+        }
+        catch (IndexOutOfBoundsException e) {
+            throw new IllegalStateException("Corrupted LZ77 sequences", e);
+        }
+        return block;
+    }
+
+    private static void writeSequence(ByteArrayOutputStream[] out, byte[] block, int start, int literals,
+                                      int matchLength, int distance) {
+        int match = (matchLength == 0) ? 0 : matchLength - MIN_MATCH;
+        out[LENGTHS].write((Math.min(literals, 15) << 4) | Math.min(match, 15));
+        if (literals >= 15) writeLength(out[LENGTHS], literals - 15);
+        out[LITERALS].write(block, start, literals);
+
+        if (matchLength == 0) return;
+        if (match >= 15) writeLength(out[LENGTHS], match - 15);
+        out[DISTANCE_LOW].write(distance & 0xff);
+        out[DISTANCE_HIGH].write(distance >>> 8);
+    }
+
+    // the part of a length past 15, in bytes of 255 and a final smaller one
+    private static void writeLength(ByteArrayOutputStream out, int length) {
+        while (length >= 255) {
+            out.write(255);
+            length -= 255;
+        }
+        out.write(length);
+    }
+
+    private static void insert(byte[] block, int i, int[] head, int[] prev, int window) {
+        int hash = hash(block, i);
+        prev[i & (window - 1)] = head[hash];
+        head[hash] = i;
+    }
+
+    private static int hash(byte[] block, int i) {
+        int x = (block[i] & 0xff) | ((block[i + 1] & 0xff) << 8)
+                | ((block[i + 2] & 0xff) << 16) | ((block[i + 3] & 0xff) << 24);
+        return (x * 0x9E3779B1) >>> (32 - HASH_BITS);
+    }
+
+    private static int matchLength(byte[] block, int from, int to) {
+        int length = 0;
+        while (to + length < block.length && block[from + length] == block[to + length]) length++;
+        return length;
+    }
+}
@@ -6,11 +6,11 @@ package huffman;
  */
 public class Node implements Comparable<Node> {
     protected final char ch;
-    protected final int freq;
+    protected final long freq;
     protected final Node left;
     protected final Node right;
 
-    Node(char ch, int freq, Node left, Node right) {
+    Node(char ch, long freq, Node left, Node right) {
         this.ch    = ch;
         this.freq  = freq;
         this.left  = left;
@@ -27,6 +27,6 @@ public class Node implements Comparable<Node> {
 
     @Override
     public int compareTo(Node that) {
-        return this.freq - that.freq;
+        return Long.compare(this.freq, that.freq);
     }
 }
@@ -0,0 +1,35 @@
+package huffman;
+
+/**
+ * Compressed data of a single file, kept in memory until it is written
+ * into the archive with {@link Huffman#write(Segment, io.OutStream)}.
+ *
+ * @author Dev1Art
+ * @project HuffCompressor
+ */
+public final class Segment {
+    private final long length;
+    final byte[] bytes;
+    private final CodingStats stats;
+
+    Segment(long length, byte[] bytes, CodingStats stats) {
+        this.length = length;
+        this.bytes  = bytes;
+        this.stats  = stats;
+    }
+
+    // number of bytes of the original uncompressed data
+    public long length() {
+        return length;
+    }
+
+    // number of bytes held in memory
+    public int size() {
+        return bytes.length;
+    }
+
+    // where the time of coding went, null if it wasn't measured
+    public CodingStats stats() {
+        return stats;
+    }
+}
@@ -0,0 +1,172 @@
+package huffman;
+
+import io.InStream;
+import io.OutStream;
+import java.util.Arrays;
+
+/**
+ * Several code tables for one block, with a selector naming the table of
+ * every group of {@link #GROUP_SIZE} bytes, as in bzip2.
+ *
+ * <p>Tables are trained by a few rounds of assigning every group to the table
+ * coding it in the fewest bits, then rebuilding every table from the groups
+ * it got. Selectors are move-to-front transformed and written in unary, so a
+ * run of groups on the same table costs one bit per group.
+ *
+ * @author Dev1Art
+ * @project HuffCompressor
+ */
+final class TableSet {
+
+    // bytes coded with the same table
+    static final int GROUP_SIZE = 50;
+
+    // most tables a block may have
+    static final int MAX_TABLES = 6;
+
+    // rounds of assigning groups and rebuilding tables
+    private static final int ITERATIONS = 4;
+
+    final int[][] lengths;      // code lengths of every table
+    final byte[] selectors;     // table of every group
+
+    private TableSet(int[][] lengths, byte[] selectors) {
+        this.lengths = lengths;
+        this.selectors = selectors;
+    }
+
+    static int groups(int blockLength) {
+        return (blockLength + GROUP_SIZE - 1) / GROUP_SIZE;
+    }
+
+    /**
+     * Trains up to {@code tables} tables on the block. Tables no group ended
+     * up with are dropped, so the set may be smaller than asked for.
+     */
+    static TableSet train(byte[] block, int symbols, int tables) {
+        int groups = groups(block.length);
+
+        // start with the byte values split into bands of about equal frequency,
+        // every table cheap on its own band only
+        long[] freq = new long[symbols];
+        for (byte b : block) ++freq[b & 0xff];
+        int[][] lengths = new int[tables][symbols];
+        long seen = 0;
+        for (int c = 0; c < symbols; c++) {
+            int band = (int) Math.min(tables - 1, seen * tables / block.length);
+            for (int t = 0; t < tables; t++) lengths[t][c] = (t == band) ? 1 : CodeLengths.MAX_LENGTH;
+            seen += freq[c];
+        }
+
+        byte[] selectors = new byte[groups];
+        long[][] tableFreq = new long[tables][symbols];
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            for (long[] f : tableFreq) Arrays.fill(f, 0);
+            assign(block, lengths, selectors, tableFreq);
+
+            // every byte keeps a code while training, so any group can move to any table
+            for (int t = 0; t < tables; t++) {
+                long[] smoothed = new long[symbols];
+                for (int c = 0; c < symbols; c++) smoothed[c] = tableFreq[t][c] + 1;
+                lengths[t] = CodeLengths.limitedLengths(smoothed, CodeLengths.MAX_LENGTH);
+            }
+        }
+
+        // final tables cover the groups assigned to them, and nothing else
+        for (long[] f : tableFreq) Arrays.fill(f, 0);
+        assign(block, lengths, selectors, tableFreq);
+
+        int[] index = new int[tables];
+        int used = 0;
+        for (int t = 0; t < tables; t++) {
+            long count = 0;
+            for (long f : tableFreq[t]) count += f;
+            index[t] = (count > 0) ? used++ : -1;
+        }
+        int[][] finalLengths = new int[used][];
+        for (int t = 0; t < tables; t++) {
+            if (index[t] >= 0) finalLengths[index[t]] = CodeLengths.limitedLengths(tableFreq[t], CodeLengths.MAX_LENGTH);
+        }
+        for (int g = 0; g < groups; g++) selectors[g] = (byte) index[selectors[g]];
+        return new TableSet(finalLengths, selectors);
+    }
+
+    // give every group to the table coding it in the fewest bits, and count its bytes there
+    private static void assign(byte[] block, int[][] lengths, byte[] selectors, long[][] tableFreq) {
+        int tables = lengths.length;
+        int[] cost = new int[tables];
+        for (int g = 0; g < selectors.length; g++) {
+            int start = g * GROUP_SIZE;
+            int end = Math.min(start + GROUP_SIZE, block.length);
+
+            Arrays.fill(cost, 0);
+            for (int i = start; i < end; i++) {
+                int c = block[i] & 0xff;
+                for (int t = 0; t < tables; t++) cost[t] += lengths[t][c];
+            }
+            int best = 0;
+            for (int t = 1; t < tables; t++) {
+                if (cost[t] < cost[best]) best = t;
+            }
+
+            selectors[g] = (byte) best;
+            for (int i = start; i < end; i++) ++tableFreq[best][block[i] & 0xff];
+        }
+    }
+
+    // bits the block takes coded with this set: tables, selectors and codes
+    long bits(byte[] block) {
+        long bits = 0;
+        for (int[] table : lengths) bits += CodeLengths.bits(table);
+
+        byte[] order = initialOrder();
+        for (int g = 0; g < selectors.length; g++) {
+            bits += moveToFront(order, selectors[g]) + 1;
+
+            int start = g * GROUP_SIZE;
+            int end = Math.min(start + GROUP_SIZE, block.length);
+            int[] table = lengths[selectors[g]];
+            for (int i = start; i < end; i++) bits += table[block[i] & 0xff];
+        }
+        return bits;
+    }
+
+    void writeSelectors(OutStream binaryOut) {
+        byte[] order = initialOrder();
+        for (byte selector : selectors) {
+            int j = moveToFront(order, selector);
+            for (int k = 0; k < j; k++) binaryOut.write(true);
+            binaryOut.write(false);
+        }
+    }
+
+    static byte[] readSelectors(InStream binaryIn, int groups, int tables) {
+        byte[] order = initialOrder();
+        byte[] selectors = new byte[groups];
+        for (int g = 0; g < groups; g++) {
+            int j = 0;
+            while (binaryIn.readBoolean()) {
+                if (++j >= tables) throw new IllegalStateException("Corrupted table selector");
+            }
+            byte selector = order[j];
+            moveToFront(order, selector);
+            selectors[g] = selector;
+        }
+        return selectors;
+    }
+
+    private static byte[] initialOrder() {
+        byte[] order = new byte[MAX_TABLES];
+        for (int t = 0; t < MAX_TABLES; t++) order[t] = (byte) t;
+        return order;
+    }
+
+    // position of the value in the list, which is then moved to its front
+    private static int moveToFront(byte[] order, byte value) {
+        int j = 0;
+        while (order[j] != value) j++;
+        System.arraycopy(order, 0, order, 1, j);
+        order[0] = value;
+        return j;
+    }
+}
@@ -1,6 +1,9 @@
 package io;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.NoSuchElementException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -13,68 +16,151 @@ public final class InStream {
 
     private static final Logger LOGGER = Logger.getLogger(InStream.class.getName());
     private static final int EOF = -1;   // end of file
+    private static final int REGISTER_SIZE = 64;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long MAP_THRESHOLD = 1 << 20;  // ranges from this size on are mapped
+    private static final long MAP_WINDOW = 1 << 28;     // bytes of a file mapped at a time
 
-    private BufferedInputStream in;      // the input stream
-    private int buffer;                  // one character buffer
-    private int n;                       // number of bits left in buffer
+    private InputStream in;                              // the input stream, null for a mapped file
+    private FileChannel channel;                         // the mapped file
+    private long mapped;                                 // bytes of the file mapped so far
+    private long end;                                    // end of the mapped range of the file
+    private byte[] bytes;                                // bytes read ahead from the input stream
+    private ByteBuffer window = ByteBuffer.allocate(0);  // bytes read ahead or mapped, not in buffer yet
+    private long buffer;                                 // bits read ahead, right-aligned
+    private int n;                                       // number of valid bits in buffer
+    private boolean eof;                                 // underlying stream is exhausted
 
+    // reads the file through a buffered stream
     public InStream(File file) {
+        this(file, 0);
+    }
+
+    // reads the file from the given byte offset on
+    public InStream(File file, long offset) {
+        this(file, offset, 0);
+    }
 
+    /**
+     * Reads the file from the given byte offset on, mapping the {@code length}
+     * bytes there into memory when they are many enough for mapping to pay
+     * off, as for decoding the blocks of an entry. A mapping stays until it is
+     * garbage collected and keeps the file from being replaced on Windows till
+     * then, so headers and other short reads go through a buffered stream.
+     */
+    public InStream(File file, long offset, long length) {
         try {
-            if (file.exists()) {
-                FileInputStream fis = new FileInputStream(file);
-                in = new BufferedInputStream(fis);
-                fillBuffer();
+            if (length >= MAP_THRESHOLD) {
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                mapped = offset;
+                end = Math.min(offset + length, channel.size());
+            } else {
+                in = new FileInputStream(file);
+                in.skipNBytes(offset);
             }
+            fillBuffer(1);
         }
         catch (IOException ioe) {
-            LOGGER.log(Level.WARNING, "Error occurs while creating InputStream via File class", ioe);
+            throw new UncheckedIOException("Error occurs while creating InputStream via File class: " + file, ioe);
+        }
+    }
+
+    // reads nothing before the first read, so a pipe with no input yet doesn't block
+    public InStream(InputStream in) {
+        this.in = in;
+    }
+
+    // top the buffer up with whole bytes as long as there is room for one more,
+    // reading more input only while fewer than r bits are there
+    private void fillBuffer(int r) {
+        while (n <= REGISTER_SIZE - 8) {
+            if (!window.hasRemaining() && (n >= r || !fillWindow())) return;
+            if (n <= REGISTER_SIZE - 32 && window.remaining() >= 4) {
+                buffer = (buffer << 32) | (window.getInt() & 0xffffffffL);
+                n += 32;
+            } else {
+                buffer = (buffer << 8) | (window.get() & 0xff);
+                n += 8;
+            }
         }
     }
 
-    private void fillBuffer() {
+    // read or map the next part of the input, false at its end
+    private boolean fillWindow() {
+        if (eof || (in == null && channel == null)) {
+            eof = true;
+            return false;
+        }
         try {
-            buffer = in.read();
-            n = 8;
+            if (channel != null) {
+                if (mapped >= end) {
+                    eof = true;
+                    return false;
+                }
+                long length = Math.min(MAP_WINDOW, end - mapped);
+                window = channel.map(FileChannel.MapMode.READ_ONLY, mapped, length);
+                mapped += length;
+                return true;
+            }
+
+            if (bytes == null) bytes = new byte[BUFFER_SIZE];
+            int r = in.read(bytes, 0, bytes.length);
+            if (r == EOF) {
+                eof = true;
+                return false;
+            }
+            window = ByteBuffer.wrap(bytes, 0, r);
+            return true;
         }
         catch (IOException e) {
-            LOGGER.log(Level.WARNING, "Error occurs while reading from buffer", e);
-            buffer = EOF;
-            n = -1;
+            throw new UncheckedIOException("Error occurs while reading from buffer", e);
         }
     }
 
     public boolean isEmpty() {
-        return buffer == EOF;
+        if (n == 0) fillBuffer(1);
+        return n == 0;
+    }
+
+    /**
+     * Returns the next {@code r} bits without consuming them. Bits past the end
+     * of the stream read as 0, so a decoder may look further ahead than the
+     * data it actually needs.
+     */
+    public int peekBits(int r) {
+        if (r < 0 || r > 32) throw new IllegalArgumentException("Illegal value for r = " + r);
+        if (n < r) fillBuffer(r);
+        long bits = (n >= r) ? (buffer >>> (n - r)) : (buffer << (r - n));
+        return (int) (bits & ((1L << r) - 1));
+    }
+
+    // consumes r bits which have been looked at through peekBits
+    public void skipBits(int r) {
+        if (r < 0 || r > 32) throw new IllegalArgumentException("Illegal value for r = " + r);
+        if (n < r) fillBuffer(r);
+        if (n < r) throw new NoSuchElementException("Reading from empty input stream");
+        n -= r;
+    }
+
+    // skip the padding up to the next byte boundary
+    public void align() {
+        n -= n & 7;
+    }
+
+    public int readBits(int r) {
+        int x = peekBits(r);
+        skipBits(r);
+        return x;
     }
 
     public boolean readBoolean() {
         if (isEmpty()) throw new NoSuchElementException("Reading from empty input stream");
-        n--;
-        boolean bit = ((buffer >> n) & 1) == 1;
-        if (n == 0) fillBuffer();
-        return bit;
+        return readBits(1) == 1;
     }
 
     public char readChar() {
         if (isEmpty()) throw new NoSuchElementException("Reading from empty input stream");
-
-        // special case when aligned byte
-        if (n == 8) {
-            int x = buffer;
-            fillBuffer();
-            return (char) (x & 0xff);
-        }
-
-        // combine last N bits of current buffer with first 8-N bits of new buffer
-        int x = buffer;
-        x <<= (8 - n);
-        int oldN = n;
-        fillBuffer();
-        if (isEmpty()) throw new NoSuchElementException("Reading from empty input stream");
-        n = oldN;
-        x |= (buffer >>> n);
-        return (char) (x & 0xff);
+        return (char) readBits(8);
     }
 
     public String readString() {
@@ -88,13 +174,79 @@ public final class InStream {
         return sb.toString();
     }
 
+    /**
+     * Reads up to {@code len} bytes into {@code b} and returns how many were read,
+     * or -1 at the end of the stream. When the stream is byte-aligned the bytes
+     * are copied straight from the file instead of going through the bit buffer.
+     */
+    public int read(byte[] b, int off, int len) {
+        int count = 0;
+
+        // bytes already in the bit buffer
+        while (count < len && n >= 8) {
+            b[off + count++] = (byte) (buffer >>> (n - 8));
+            n -= 8;
+        }
+
+        if (n == 0) {
+            try {
+                while (count < len) {
+                    if (!window.hasRemaining()) {
+                        // large reads bypass the byte buffer
+                        if (in != null && !eof && len - count >= BUFFER_SIZE) {
+                            int r = in.read(b, off + count, len - count);
+                            if (r == EOF) eof = true;
+                            else count += r;
+                            continue;
+                        }
+                        if (!fillWindow()) break;
+                    }
+                    int r = Math.min(len - count, window.remaining());
+                    window.get(b, off + count, r);
+                    count += r;
+                }
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("Error occurs while reading from buffer", e);
+            }
+        } else {
+            // not aligned, every byte has to be combined from two, so shift four at a time
+            while (count < len) {
+                if (n < 32) fillBuffer(32);
+                if (n >= 32 && len - count >= 4) {
+                    int x = readBits(32);
+                    b[off + count++] = (byte) (x >>> 24);
+                    b[off + count++] = (byte) (x >>> 16);
+                    b[off + count++] = (byte) (x >>> 8);
+                    b[off + count++] = (byte) x;
+                } else if (n >= 8) {
+                    b[off + count++] = (byte) readBits(8);
+                } else break;
+            }
+        }
+
+        return (count == 0 && len > 0) ? EOF : count;
+    }
+
     public int readInt() {
-        int x = 0;
-        for (int i = 0; i < 4; i++) {
-            char c = readChar();
-            x <<= 8;
-            x |= c;
+        return readBits(32);
+    }
+
+    public long readLong() {
+        long high = readBits(32) & 0xffffffffL;
+        return (high << 32) | (readBits(32) & 0xffffffffL);
+    }
+
+    public long readVarLong() {
+        long x = 0;
+        for (int shift = 0; shift < 63; shift += 7) {
+            int b = readBits(8);
+            x |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) return x;
         }
+        // a 10th byte would hold bit 63 and up, but only non-negative numbers are written,
+        // so anything in it is an overflow, a sign or a run-on of a corrupt archive
+        if (readBits(8) != 0) throw new IllegalStateException("Malformed variable-length number");
         return x;
     }
 
@@ -102,4 +254,14 @@ public final class InStream {
         char c = readChar();
         return (byte) (c & 0xff);
     }
+
+    public void close() {
+        try {
+            if (in != null) in.close();
+            if (channel != null) channel.close();
+        }
+        catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Error occurs while closing InputStream", e);
+        }
+    }
 }
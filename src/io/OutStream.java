@@ -1,8 +1,13 @@
 package io;
 
 import java.io.*;
-import java.util.logging.Logger;
-import java.util.logging.Level;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CancellationException;
 
 /**
  * @author DanielDFY, Dev1Art
@@ -11,124 +16,302 @@ import java.util.logging.Level;
 
 public class OutStream {
 
-    private static final Logger LOGGER = Logger.getLogger(OutStream.class.getName());
+    private static final int REGISTER_SIZE = 64;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long MAP_THRESHOLD = 1 << 20;  // files from this size on are mapped
+    private static final long MAP_WINDOW = 1 << 28;     // bytes of a file mapped at a time
 
-    private BufferedOutputStream out;  // the output stream
-    private int buffer;                // 8-bit buffer of bits to write out
-    private int n;                     // number of bits remaining in buffer
+    private OutputStream out;       // the output stream, null for a mapped file
+    private FileChannel channel;    // the mapped file
+    private long length;            // size the mapped file was preallocated to
+    private long offset;            // bytes of the output before the current window
+    private ByteBuffer window;      // whole bytes waiting to be written out, or the mapped part of the file
+    private long buffer;            // bits waiting to be written out, right-aligned
+    private int n;                  // number of bits in buffer
 
     public OutStream(File file) {
         try {
-            OutputStream os = new FileOutputStream(file);
-            out = new BufferedOutputStream(os);
+            out = new FileOutputStream(file);
         }
         catch (IOException e) {
-            LOGGER.log(Level.WARNING, "Error occurs while OutputStream initialization via File class", e);
+            throw new UncheckedIOException("Error occurs while OutputStream initialization via File class: " + file, e);
         }
+        window = ByteBuffer.allocate(BUFFER_SIZE);
     }
 
-    private void writeBit(boolean x) {
-        // add bit to buffer
-        buffer <<= 1;
-        if (x) buffer |= 1;
+    /**
+     * Preallocates the file to {@code length} bytes, the size of the data to be
+     * written, and writes through a memory mapping of it. Small files are
+     * written through a buffered stream instead.
+     */
+    public OutStream(File file, long length) {
+        this.length = length;
+        try {
+            if (length < MAP_THRESHOLD) {
+                out = new FileOutputStream(file);
+                window = ByteBuffer.allocate(BUFFER_SIZE);
+                return;
+            }
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            raf.setLength(length);
+            channel = raf.getChannel();
+            window = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(MAP_WINDOW, length));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Error occurs while OutputStream initialization via File class: " + file, e);
+        }
+    }
 
-        // if buffer is full (8 bits), write out as a single byte
-        n++;
-        if (n == 8) clearBuffer();
+    /**
+     * Preallocates the file to {@code length} bytes for {@link #writeAt}
+     * without mapping it, as positional writes go straight to the channel.
+     * Bits written in sequence map the file only once they are written out.
+     */
+    public static OutStream positional(File file, long length) {
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            raf.setLength(length);
+            return new OutStream(raf.getChannel(), length);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Error occurs while OutputStream initialization via File class: " + file, e);
+        }
     }
 
-    private void writeByte(int x) {
-        assert x >= 0 && x < 256;
+    private OutStream(FileChannel channel, long length) {
+        this.channel = channel;
+        this.length = length;
+        window = ByteBuffer.allocate(0);
+    }
 
-        // optimized if byte-aligned
-        if (n == 0) {
-            try {
-                out.write(x);
-            }
-            catch (IOException e) {
-                LOGGER.log(Level.WARNING, "Error occurs while writing bytes", e);
-            }
+    public OutStream(OutputStream out) {
+        this.out = out;
+        window = ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    /**
+     * Writes the low {@code r} bits of {@code x}, most significant first.
+     * Bits are gathered in a 64-bit register and only moved to the byte
+     * buffer once it runs full.
+     */
+    public void writeBits(long x, int r) {
+        if (r < 0 || r > REGISTER_SIZE) throw new IllegalArgumentException("Illegal value for r = " + r);
+        if (r > REGISTER_SIZE - 8) {
+            writeBits(x >>> 32, r - 32);
+            writeBits(x, 32);
             return;
         }
+        if (n + r > REGISTER_SIZE) drainBuffer();
+        buffer = (buffer << r) | (x & ((1L << r) - 1));
+        n += r;
+    }
 
-        // otherwise write one bit at a time
-        for (int i = 0; i < 8; i++) {
-            boolean bit = ((x >>> (8 - i - 1)) & 1) == 1;
-            writeBit(bit);
+    // move whole bytes from the bit register to the byte buffer
+    private void drainBuffer() {
+        while (n >= 8) {
+            if (!window.hasRemaining()) flushWindow();
+            if (n >= 32 && window.remaining() >= 4) {
+                n -= 32;
+                window.putInt((int) (buffer >>> n));
+            } else {
+                n -= 8;
+                window.put((byte) (buffer >>> n));
+            }
         }
     }
 
-    // write out any remaining bits in buffer to the binary output stream, padding with 0s
-    private void clearBuffer() {
-        if (n == 0) return;
-        if (n > 0) buffer <<= (8 - n);
+    // hand the buffered bytes to the output stream, or map the next part of the file
+    private void flushWindow() {
         try {
-            out.write(buffer);
+            if (channel != null) {
+                offset += window.position();
+                long size = Math.max(Math.min(MAP_WINDOW, length - offset), BUFFER_SIZE);
+                window = channel.map(FileChannel.MapMode.READ_WRITE, offset, size);
+                return;
+            }
+            out.write(window.array(), 0, window.position());
+            offset += window.position();
         }
         catch (IOException e) {
-            LOGGER.log(Level.WARNING, "Error occurs while writing bytes", e);
+            throw new UncheckedIOException("Error occurs while writing bytes", e);
+        }
+        window.clear();
+    }
+
+    // write out any remaining bits in buffer to the binary output stream, padding with 0s
+    private void clearBuffer() {
+        drainBuffer();
+        if (n > 0) {
+            writeBits(0, 8 - n);
+            drainBuffer();
         }
-        n = 0;
-        buffer = 0;
+    }
+
+    // number of whole bytes written so far, the offset of the next byte once aligned
+    public long position() {
+        return offset + window.position() + (n >>> 3);
+    }
+
+    // pad with 0s up to the next byte boundary
+    public void align() {
+        if ((n & 7) != 0) writeBits(0, 8 - (n & 7));
     }
 
     public void flush() {
         clearBuffer();
+        if (channel != null) return;
+        flushWindow();
         try {
             out.flush();
         }
         catch (IOException e) {
-            LOGGER.log(Level.WARNING, "Error occurs while flushing the buffer", e);
+            throw new UncheckedIOException("Error occurs while flushing the buffer", e);
         }
     }
 
     public void close() {
         flush();
         try {
-            out.close();
+            if (channel != null) {
+                // give back what was mapped past the end of the data
+                long written = Math.max(offset + window.position(), length);
+                if (channel.size() > written) channel.truncate(written);
+                channel.close();
+            } else {
+                out.close();
+            }
         }
         catch (IOException e) {
-            LOGGER.log(Level.WARNING, "Error occurs while closing OutputStream", e);
+            throw new UncheckedIOException("Error occurs while closing OutputStream", e);
         }
     }
 
     public void write(boolean x) {
-        writeBit(x);
+        writeBits(x ? 1 : 0, 1);
     }
 
     public void write(byte x) {
-        writeByte(x & 0xff);
+        writeBits(x, 8);
     }
 
     public void write(int x) {
-        writeByte((x >>> 24) & 0xff);
-        writeByte((x >>> 16) & 0xff);
-        writeByte((x >>>  8) & 0xff);
-        writeByte((x) & 0xff);
+        writeBits(x, 32);
+    }
+
+    public void write(long x) {
+        writeBits(x, 64);
+    }
+
+    // Writes a non-negative long in 7-bit groups, least significant first, as few bytes as it needs.
+    public void writeVarLong(long x) {
+        if (x < 0) throw new IllegalArgumentException("Illegal negative length = " + x);
+        while (x >= 0x80) {
+            writeBits((x & 0x7f) | 0x80, 8);
+            x >>>= 7;
+        }
+        writeBits(x, 8);
     }
 
     public void write(char x) {
         if (x >= 256) throw new IllegalArgumentException("Illegal 8-bit char = " + x);
-        writeByte(x);
+        writeBits(x, 8);
     }
 
     // Writes the r-bit char to the binary output stream.
     public void write(char x, int r) {
-        if (r == 8) {
-            write(x);
-            return;
-        }
         if (r < 1 || r > 16) throw new IllegalArgumentException("Illegal value for r = " + r);
         if (x >= (1 << r))   throw new IllegalArgumentException("Illegal " + r + "-bit char = " + x);
-        for (int i = 0; i < r; i++) {
-            boolean bit = ((x >>> (r - i - 1)) & 1) == 1;
-            writeBit(bit);
+        writeBits(x, r);
+    }
+
+    /**
+     * Writes bytes at a fixed position of a preallocated file, apart from the
+     * bits written in sequence. Several threads may write disjoint ranges at once.
+     */
+    public void writeAt(long position, byte[] b, int off, int len) {
+        if (channel == null) throw new UnsupportedOperationException("Positional write to a stream");
+        try {
+            ByteBuffer bytes = ByteBuffer.wrap(b, off, len);
+            while (bytes.hasRemaining()) {
+                channel.write(bytes, position + bytes.position() - off);
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Error occurs while writing bytes", e);
         }
     }
 
+    /**
+     * Copies {@code count} bytes of the file from {@code position} on into the
+     * output with {@link FileChannel#transferTo}, bypassing the bit buffer and
+     * the Java heap. The output must be byte-aligned.
+     */
+    public void transferFrom(File file, long position, long count) {
+        if ((n & 7) != 0) throw new IllegalStateException("Transfer into an unaligned stream");
+        drainBuffer();
+
+        long done = 0;
+        try (FileChannel source = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel != null) {
+                // continue the mapping behind the transferred bytes
+                long at = offset + window.position();
+                source.position(position);
+                while (done < count) {
+                    long r = channel.transferFrom(source, at + done, count - done);
+                    if (r <= 0) break;
+                    done += r;
+                }
+                offset = at + done;
+                window = channel.map(FileChannel.MapMode.READ_WRITE, offset,
+                        Math.max(Math.min(MAP_WINDOW, length - offset), BUFFER_SIZE));
+            } else {
+                flushWindow();
+                WritableByteChannel target = (out instanceof FileOutputStream)
+                        ? ((FileOutputStream) out).getChannel()
+                        : Channels.newChannel(out);
+                while (done < count) {
+                    long r = source.transferTo(position + done, count - done, target);
+                    if (r <= 0) break;
+                    done += r;
+                }
+                offset += done;
+            }
+        }
+        catch (ClosedByInterruptException e) {
+            // the thread was interrupted to cancel the job, not a failure of the file
+            throw new CancellationException("Interrupted while transferring: " + file);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Error occurs while transferring bytes", e);
+        }
+        if (done < count) throw new IllegalStateException("File changed while transferring: " + file);
+    }
+
     public void write(byte[] bytes) {
-        for (byte b : bytes) {
-            write(b);
+        write(bytes, 0, bytes.length);
+    }
+
+    public void write(byte[] b, int off, int len) {
+        if ((n & 7) != 0) {
+            // not aligned, every byte is split over two, so shift four at a time
+            int i = off;
+            for (; i + 4 <= off + len; i += 4) {
+                writeBits(((b[i] & 0xff) << 24) | ((b[i + 1] & 0xff) << 16)
+                        | ((b[i + 2] & 0xff) << 8) | (b[i + 3] & 0xff), 32);
+            }
+            for (; i < off + len; i++) {
+                writeBits(b[i], 8);
+            }
+            return;
+        }
+
+        drainBuffer();
+        while (len > 0) {
+            if (!window.hasRemaining()) flushWindow();
+            int r = Math.min(len, window.remaining());
+            window.put(b, off, r);
+            off += r;
+            len -= r;
         }
     }
 }
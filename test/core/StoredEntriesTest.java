@@ -0,0 +1,73 @@
+package core;
+
+import io.OutStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Entries that coding wouldn't shrink are stored raw.
+ *
+ * @author Dev1Art
+ * @project HuffCompressor
+ */
+class StoredEntriesTest {
+
+    private static final int[] RANDOM_LENGTHS = {16, 100, 300, 1000};
+
+    @TempDir
+    Path dir;
+
+    // one worker codes every file in place, more code small ones ahead in the pipeline
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4})
+    void smallRandomEntriesAreStoredRaw(int workers) throws IOException {
+        Path src = Files.createDirectory(dir.resolve("src"));
+        Random random = new Random(0);
+        for (int length : RANDOM_LENGTHS) {
+            byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+            Files.write(src.resolve("random" + length + ".bin"), bytes);
+        }
+        Files.write(src.resolve("text.txt"), "abracadabra ".repeat(100).getBytes());
+
+        Map<String, EntryMetrics> metrics = new HashMap<>();
+        CompressionOptions options = new CompressionOptions().setWorkers(workers).setListener(new CompressionListener() {
+            @Override
+            public void entryCompressed(EntryMetrics entry) {
+                metrics.put(new File(entry.getPath()).getName(), entry);
+            }
+        });
+        File archive = dir.resolve("archive.huff").toFile();
+        OutStream binaryOut = new OutStream(archive);
+        Compressor.compress(src.toFile(), binaryOut, options);
+        binaryOut.close();
+
+        for (int length : RANDOM_LENGTHS) {
+            EntryMetrics entry = metrics.get("random" + length + ".bin");
+            assertEquals(EntryMetrics.Method.STORED, entry.getMethod(), entry.getPath());
+            assertEquals(length, entry.getBytesOut(), entry.getPath());
+        }
+        EntryMetrics text = metrics.get("text.txt");
+        assertEquals(EntryMetrics.Method.HUFFMAN, text.getMethod());
+        assertTrue(text.getBytesOut() < text.getBytesIn());
+
+        File target = dir.resolve("out").toFile();
+        Compressor.extract(archive, "**", target);
+        for (File file : src.toFile().listFiles()) {
+            assertArrayEquals(Files.readAllBytes(file.toPath()),
+                    Files.readAllBytes(new File(target, "src/" + file.getName()).toPath()), file.getName());
+        }
+    }
+}
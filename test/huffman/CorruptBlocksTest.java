@@ -0,0 +1,57 @@
+package huffman;
+
+import data.Constants;
+import io.InStream;
+import io.OutStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * A file of corrupt blocks fails to decompress and leaves nothing behind.
+ *
+ * @author Dev1Art
+ * @project HuffCompressor
+ */
+class CorruptBlocksTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void failedBlockRemovesThePartialFile() throws IOException {
+        // several blocks, decoded by tasks in parallel
+        int length = 3 << 20;
+        byte[] data = new byte[length];
+        Random random = new Random(0);
+        for (int i = 0; i < length; i++) data[i] = (byte) ('a' + random.nextInt(8));
+        File file = dir.resolve("data.txt").toFile();
+        Files.write(file.toPath(), data);
+
+        File archive = dir.resolve("data.huff").toFile();
+        OutStream binaryOut = new OutStream(archive);
+        Huffman.compress(file, binaryOut);
+        binaryOut.close();
+
+        // no tables in the first block: after the length of the file, the size of the block and its raw length
+        int header = (64 - Long.numberOfLeadingZeros(length) + 6) / 7;
+        try (RandomAccessFile raf = new RandomAccessFile(archive, "rw")) {
+            raf.seek(header + 8);
+            raf.write(0);
+        }
+
+        File out = dir.resolve("out.txt").toFile();
+        InStream binaryIn = new InStream(archive);
+        assertThrows(IllegalStateException.class, () -> Huffman.decompress(binaryIn, out, Constants.FORMAT_VERSION));
+        binaryIn.close();
+        assertFalse(out.exists());
+    }
+}
@@ -0,0 +1,97 @@
+package huffman;
+
+import data.Constants;
+import io.InStream;
+import io.OutStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Coding with a table built from a sample of the file, instead of one table
+ * per block.
+ *
+ * @author Dev1Art
+ * @project HuffCompressor
+ */
+class SampledTablesTest {
+
+    // bytes lost to the sampled table against tables of every block, at most
+    private static final double ACCEPTED_LOSS = 0.03;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void sampledTableSkipsBlockTablesWithinAcceptedLoss() throws IOException {
+        // several blocks of text-like bytes, alike all through the file
+        byte[] data = text(new Random(0), 4 << 20);
+        File file = dir.resolve("text.txt").toFile();
+        Files.write(file.toPath(), data);
+
+        CodingStats blockStats = new CodingStats();
+        File blockArchive = compress(file, null, blockStats);
+        CodingStats sampledStats = new CodingStats();
+        File sampledArchive = compress(file, Huffman.sample(file), sampledStats);
+
+        // no block is counted, so no block builds a table of its own
+        assertTrue(blockStats.nanos(CodingStats.Phase.HISTOGRAM) > 0);
+        assertEquals(0, sampledStats.nanos(CodingStats.Phase.HISTOGRAM));
+        assertEquals(blockStats.blocks(), sampledStats.blocks());
+
+        assertTrue(sampledArchive.length() <= blockArchive.length() * (1 + ACCEPTED_LOSS),
+                "sampled " + sampledArchive.length() + " bytes against " + blockArchive.length());
+        assertArrayEquals(data, decompress(sampledArchive));
+    }
+
+    @Test
+    void blockUnlikeTheSampleIsNeverLargerThanRaw() throws IOException {
+        // text, then bytes the sample mostly missed, in a block of their own
+        Random random = new Random(1);
+        byte[] data = text(random, 3 << 20);
+        for (int i = 2 << 20; i < data.length; i++) data[i] = (byte) (128 + random.nextInt(128));
+        File file = dir.resolve("mixed.bin").toFile();
+        Files.write(file.toPath(), data);
+
+        CodingStats stats = new CodingStats();
+        File archive = compress(file, Huffman.sample(file), stats);
+
+        // that block is counted for a table of its own
+        assertTrue(stats.nanos(CodingStats.Phase.HISTOGRAM) > 0);
+        assertTrue(archive.length() < data.length);
+        assertArrayEquals(data, decompress(archive));
+    }
+
+    private File compress(File file, long[] sample, CodingStats stats) {
+        File archive = new File(file.getPath() + (sample != null ? ".sampled" : ".blocks"));
+        OutStream binaryOut = new OutStream(archive);
+        Huffman.compress(file, binaryOut, sample, 1, 0, stats);
+        binaryOut.close();
+        return archive;
+    }
+
+    private byte[] decompress(File archive) throws IOException {
+        File file = new File(archive.getPath() + ".out");
+        InStream binaryIn = new InStream(archive);
+        Huffman.decompress(binaryIn, file, Constants.FORMAT_VERSION);
+        binaryIn.close();
+        return Files.readAllBytes(file.toPath());
+    }
+
+    // bytes skewed like text, so codes of many lengths get used
+    private static byte[] text(Random random, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) ('a' + Math.min((int) Math.abs(random.nextGaussian() * 6), 25));
+        }
+        return bytes;
+    }
+}